@@ -43,6 +43,14 @@ public class ARFFGenerator {
 	}
 
 	public static Instances generateTestData(ArrayList<SentimentData> sentiList) {
+		return generateTestData(sentiList, new String[0]);
+	}
+
+	/**
+	 * The class and text attributes followed by one numeric attribute per
+	 * name in featureNames, read from the features of each SentimentData.
+	 */
+	public static Instances generateTestData(ArrayList<SentimentData> sentiList, String[] featureNames) {
 		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
 		Instances data;
 		ArrayList<String> classVectors = new ArrayList<String>();
@@ -51,6 +59,8 @@ public class ARFFGenerator {
 		classVectors.add("1");
 		attributes.add(new Attribute("lab", classVectors));
 		attributes.add(new Attribute("text", (ArrayList) null));
+		for (String name : featureNames)
+			attributes.add(new Attribute(name));
 
 		data = new Instances("SentiSe", attributes, 0);
 		int length = sentiList.size();
@@ -60,6 +70,9 @@ public class ARFFGenerator {
 			double[] vals = new double[data.numAttributes()];
 			vals[0] = classVectors.indexOf("" + sentiList.get(i).getRating());
 			vals[1] = data.attribute(1).addStringValue(sentiList.get(i).getText());
+			double[] features = sentiList.get(i).getFeatures();
+			for (int j = 0; j < featureNames.length; j++)
+				vals[2 + j] = features == null ? 0 : features[j];
 			DenseInstance denseInstance = new DenseInstance(1.0, vals);
 			data.add(denseInstance);
 
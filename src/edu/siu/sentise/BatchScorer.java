@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import au.com.bytecode.opencsv.CSVParser;
+import au.com.bytecode.opencsv.CSVReader;
+import edu.siu.sentise.util.JsonUtil;
+
+/**
+ * Scores a stream of comments with a saved model and writes
+ * <code>id,label,confidence,stripped</code> rows as it goes, stripped being
+ * the number of characters of URLs, code and stack traces removed from the
+ * comment before scoring. Reading, preprocessing
+ * and classification run on separate threads connected by small bounded
+ * queues of micro-batches, so memory use does not depend on the input size.
+ */
+public class BatchScorer {
+
+	public static final String FORMAT_JSONL = "jsonl";
+	public static final String FORMAT_CSV = "csv";
+	public static final String FORMAT_TSV = "tsv";
+
+	private static final int QUEUE_CAPACITY = 4; // batches in flight between two stages
+	private static final List<ScoreRecord> END_OF_INPUT = new ArrayList<ScoreRecord>();
+
+	private final SentiSEPredictor predictor;
+	private final String format;
+	private final int batchSize;
+
+	private volatile Exception readFailure;
+
+	public BatchScorer(SentiSEPredictor predictor, String format, int batchSize) {
+		if (!format.equals(FORMAT_JSONL) && !format.equals(FORMAT_CSV) && !format.equals(FORMAT_TSV))
+			throw new IllegalArgumentException("Unknown input format: " + format);
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+
+		this.predictor = predictor;
+		this.format = format;
+		this.batchSize = batchSize;
+	}
+
+	public static String getFormatForFile(String fileName) {
+		String name = fileName.toLowerCase();
+		if (name.endsWith(".csv"))
+			return FORMAT_CSV;
+		if (name.endsWith(".tsv") || name.endsWith(".tab"))
+			return FORMAT_TSV;
+		return FORMAT_JSONL;
+	}
+
+	/**
+	 * Scores every record of input and returns the number of rows written.
+	 * Records that cannot be parsed or scored are reported on stderr and
+	 * skipped.
+	 */
+	public long score(final Reader input, Writer output) throws Exception {
+		final BlockingQueue<List<ScoreRecord>> readQueue = new ArrayBlockingQueue<List<ScoreRecord>>(QUEUE_CAPACITY);
+		final BlockingQueue<List<ScoreRecord>> preprocessedQueue = new ArrayBlockingQueue<List<ScoreRecord>>(
+				QUEUE_CAPACITY);
+
+		Thread readerThread = new Thread(new Runnable() {
+			public void run() {
+				readRecords(input, readQueue);
+			}
+		}, "sentise-score-reader");
+		Thread preprocessorThread = new Thread(new Runnable() {
+			public void run() {
+				preprocessRecords(readQueue, preprocessedQueue);
+			}
+		}, "sentise-score-preprocessor");
+
+		// daemon threads so that a failing writer never leaves them blocked on a full queue
+		readerThread.setDaemon(true);
+		preprocessorThread.setDaemon(true);
+		readerThread.start();
+		preprocessorThread.start();
+
+		BufferedWriter writer = new BufferedWriter(output);
+		writer.write("id,label,confidence,stripped\n");
+
+		long count = 0;
+		List<ScoreRecord> batch;
+		while ((batch = preprocessedQueue.take()) != END_OF_INPUT) {
+			for (ScoreRecord record : batch) {
+				if (record.distribution == null && record.processedText == null)
+					continue;
+				try {
+					double[] distribution = record.distribution;
+					if (distribution == null) {
+						distribution = predictor.distribution(record.processedText, record.features);
+						predictor.cacheDistribution(record.normalizedText, distribution);
+					}
+					int best = 0;
+					for (int i = 1; i < distribution.length; i++)
+						if (distribution[i] > distribution[best])
+							best = i;
+
+					writer.write(csvField(record.id));
+					writer.write(',');
+					writer.write(Integer.toString(predictor.getClassLabel(best)));
+					writer.write(',');
+					writer.write(String.format(Locale.ROOT, "%.4f", distribution[best]));
+					writer.write(',');
+					writer.write(Integer.toString(record.strippedChars[0]));
+					writer.write('\n');
+					count++;
+				} catch (Exception e) {
+					System.err.println("Unable to score record " + record.id + ": " + e.getMessage());
+				}
+			}
+			writer.flush();
+		}
+
+		readerThread.join();
+		preprocessorThread.join();
+		if (readFailure != null)
+			throw readFailure;
+		return count;
+	}
+
+	private void readRecords(Reader input, BlockingQueue<List<ScoreRecord>> readQueue) {
+		try {
+			try {
+				RecordReader recordReader = format.equals(FORMAT_JSONL) ? new JsonLinesReader(input)
+						: new DelimitedReader(input, format.equals(FORMAT_CSV) ? ',' : '\t');
+
+				List<ScoreRecord> batch = new ArrayList<ScoreRecord>(batchSize);
+				ScoreRecord record;
+				while ((record = recordReader.next()) != null) {
+					batch.add(record);
+					if (batch.size() == batchSize) {
+						readQueue.put(batch);
+						batch = new ArrayList<ScoreRecord>(batchSize);
+					}
+				}
+				if (!batch.isEmpty())
+					readQueue.put(batch);
+			} catch (IOException e) {
+				readFailure = e;
+			} finally {
+				readQueue.put(END_OF_INPUT);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void preprocessRecords(BlockingQueue<List<ScoreRecord>> readQueue,
+			BlockingQueue<List<ScoreRecord>> preprocessedQueue) {
+		try {
+			List<ScoreRecord> batch;
+			while ((batch = readQueue.take()) != END_OF_INPUT) {
+				for (ScoreRecord record : batch) {
+					try {
+						record.normalizedText = predictor.normalize(record.text, record.strippedChars);
+						record.distribution = predictor.getCachedDistribution(record.normalizedText);
+						if (record.distribution == null) {
+							record.features = predictor.createFeatures();
+							record.processedText = predictor.preprocessNormalized(record.normalizedText,
+									record.features);
+						}
+					} catch (Exception e) {
+						System.err.println("Unable to preprocess record " + record.id + ": " + e.getMessage());
+					}
+				}
+				preprocessedQueue.put(batch);
+			}
+			preprocessedQueue.put(END_OF_INPUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String csvField(String value) {
+		if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+			return value;
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static class ScoreRecord {
+		final String id;
+		final String text;
+		String normalizedText;
+		String processedText;
+		double[] features;
+		double[] distribution; // set on a cache hit
+		final int[] strippedChars = new int[1];
+
+		ScoreRecord(String id, String text) {
+			this.id = id;
+			this.text = text;
+		}
+	}
+
+	private interface RecordReader {
+		ScoreRecord next() throws IOException;
+	}
+
+	/**
+	 * One JSON object per line with a "text" field and an optional "id"
+	 * field. The line number is used when there is no id.
+	 */
+	private static class JsonLinesReader implements RecordReader {
+		private final BufferedReader reader;
+		private long lineNumber = 0;
+
+		JsonLinesReader(Reader input) {
+			this.reader = new BufferedReader(input);
+		}
+
+		public ScoreRecord next() throws IOException {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				if (line.trim().isEmpty())
+					continue;
+				try {
+					HashMap<String, String> values = JsonUtil.parseObject(line);
+					String text = values.get("text");
+					if (text == null) {
+						System.err.println("Skipping line " + lineNumber + ": no text field");
+						continue;
+					}
+					String id = values.get("id");
+					return new ScoreRecord(id == null ? Long.toString(lineNumber) : id, text);
+				} catch (IllegalArgumentException e) {
+					System.err.println("Skipping line " + lineNumber + ": " + e.getMessage());
+				}
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * CSV or TSV rows. A first row containing a "text" column is used as
+	 * header, otherwise rows are read as id,text (or text alone).
+	 */
+	private static class DelimitedReader implements RecordReader {
+		private final CSVReader reader;
+		private int idColumn = 0;
+		private int textColumn = 1;
+		private boolean firstRow = true;
+		private long rowNumber = 0;
+
+		DelimitedReader(Reader input, char separator) {
+			char quote = separator == '\t' ? CSVParser.NULL_CHARACTER : '"';
+			this.reader = new CSVReader(input, separator, quote, CSVParser.NULL_CHARACTER);
+		}
+
+		public ScoreRecord next() throws IOException {
+			String[] row;
+			while ((row = reader.readNext()) != null) {
+				rowNumber++;
+				if (firstRow) {
+					firstRow = false;
+					if (readHeader(row))
+						continue;
+				}
+				if (row.length == 1)
+					return new ScoreRecord(Long.toString(rowNumber), row[0]);
+				if (row.length <= Math.max(idColumn, textColumn)) {
+					System.err.println("Skipping row " + rowNumber + ": missing columns");
+					continue;
+				}
+				return new ScoreRecord(idColumn < 0 ? Long.toString(rowNumber) : row[idColumn], row[textColumn]);
+			}
+			return null;
+		}
+
+		private boolean readHeader(String[] row) {
+			int text = -1;
+			int id = -1;
+			for (int i = 0; i < row.length; i++) {
+				String column = row[i].trim().toLowerCase();
+				if (column.equals("text"))
+					text = i;
+				else if (column.equals("id"))
+					id = i;
+			}
+			if (text < 0)
+				return false;
+
+			textColumn = text;
+			idColumn = id;
+			return true;
+		}
+	}
+
+}
@@ -40,5 +40,6 @@ public class Configuration {
 	public static final String OUTPUT_DIRECTORY = "output/";
 	public static final String ARFF_DIRECTORY = "arff/";
 	public static final String EMPTY_FILE = "models/EmptyStopWords.txt";
+	public static final String PARSE_CACHE_FILE = "cache/corenlp.parses";
 
 }
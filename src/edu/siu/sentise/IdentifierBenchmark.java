@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import edu.siu.sentise.model.SentimentData;
+import edu.siu.sentise.preprocessing.AncronymHandler;
+import edu.siu.sentise.preprocessing.ContractionLoader;
+import edu.siu.sentise.preprocessing.EmoticonProcessor;
+import edu.siu.sentise.preprocessing.IdentifierProcessor;
+import edu.siu.sentise.preprocessing.TextPreprocessor;
+import edu.siu.sentise.preprocessing.URLRemover;
+
+/**
+ * Throughput of identifier removal on the oracle comments: the scanning
+ * IdentifierProcessor against the regex passes it replaced. Both get the
+ * comments as the stage receives them in the pipeline, after the
+ * contraction, URL, acronym and emoticon stages.
+ *
+ * Usage: IdentifierBenchmark [oracle file] [rounds]
+ */
+public class IdentifierBenchmark {
+
+	// the patterns of the former IdentifierProcessor
+	private static final String CAMEL_CASE = "[A-Za-z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])[A-Za-z0-9]*";
+	private static final String WORDS_WITH_NUMBERS = "\\w*\\d\\w*";
+	private static final String WORDS_WITH_UNDERSCORE = "\\w*_\\w*";
+
+	public static void main(String[] args) {
+		String oracleFile = args.length > 0 ? args[0] : Configuration.ORACLE_FILE_NAME;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		ArrayList<SentimentData> oracle = SentimentData.parseSentimentData(oracleFile);
+		PreprocessingOptions options = new PreprocessingOptions();
+		TextPreprocessor[] previousStages = { new ContractionLoader(options.getContractionDictionary()),
+				new URLRemover(), new AncronymHandler(options.getAcronymDictionary()),
+				new EmoticonProcessor(options.getEmoticonDictionary(), true) };
+		String[] texts = new String[oracle.size()];
+		long chars = 0;
+		for (int i = 0; i < texts.length; i++) {
+			String text = oracle.get(i).getText();
+			for (TextPreprocessor stage : previousStages)
+				text = stage.process(text);
+			texts[i] = text;
+			chars += texts[i].length();
+		}
+		IdentifierProcessor processor = new IdentifierProcessor(true);
+
+		double regex = Double.MAX_VALUE;
+		double scan = Double.MAX_VALUE;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			for (String text : texts)
+				replaceAll(text).toLowerCase();
+			regex = Math.min(regex, (System.nanoTime() - start) / 1e9);
+
+			start = System.nanoTime();
+			for (String text : texts)
+				processor.process(text);
+			scan = Math.min(scan, (System.nanoTime() - start) / 1e9);
+		}
+
+		System.out.println("\nIdentifier removal, " + texts.length + " comments, best of " + rounds + " rounds");
+		System.out.println("method\tcomments/s\tMB/s");
+		System.out.println(String.format(Locale.ROOT, "regex\t%.0f\t%.1f", texts.length / regex, chars / regex / 1e6));
+		System.out.println(String.format(Locale.ROOT, "scan\t%.0f\t%.1f", texts.length / scan, chars / scan / 1e6));
+		System.out.println(String.format(Locale.ROOT, "speedup\t%.1fx", regex / scan));
+	}
+
+	private static String replaceAll(String text) {
+		text = text.replaceAll(CAMEL_CASE, " ");
+		text = text.replaceAll(WORDS_WITH_NUMBERS, " ");
+		return text.replaceAll(WORDS_WITH_UNDERSCORE, " ");
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import edu.siu.sentise.model.SentimentData;
+import edu.siu.sentise.preprocessing.BiGramTriGramHandler;
+import edu.siu.sentise.util.NGramMerger;
+
+/**
+ * Times n-gram merging on the oracle comments with growing prefixes of the
+ * phrase lists: the trie merger against the former loop of one replaceAll
+ * per phrase. The cost per comment of the merger should stay flat.
+ *
+ * Usage: NGramBenchmark [oracle file] [rounds]
+ */
+public class NGramBenchmark {
+
+	private static final int[] PERCENTS = { 10, 25, 50, 100 };
+
+	public static void main(String[] args) {
+		String oracleFile = args.length > 0 ? args[0] : Configuration.ORACLE_FILE_NAME;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+		ArrayList<SentimentData> oracle = SentimentData.parseSentimentData(oracleFile);
+		String[] texts = new String[oracle.size()];
+		for (int i = 0; i < texts.length; i++)
+			texts[i] = oracle.get(i).getText().toLowerCase();
+		ArrayList<String> phrases = BiGramTriGramHandler.loadPhrases();
+
+		System.out.println("\nN-gram merging, " + texts.length + " comments, best of " + rounds + " rounds");
+		System.out.println("phrases\tregex us/comment\ttrie us/comment");
+		for (int percent : PERCENTS) {
+			List<String> subset = phrases.subList(0, phrases.size() * percent / 100);
+			NGramMerger merger = new NGramMerger(subset);
+
+			double regex = Double.MAX_VALUE;
+			double trie = Double.MAX_VALUE;
+			for (int round = 0; round < rounds; round++) {
+				long start = System.nanoTime();
+				for (String text : texts)
+					replaceAll(subset, text);
+				regex = Math.min(regex, (System.nanoTime() - start) / 1e3 / texts.length);
+
+				start = System.nanoTime();
+				for (String text : texts)
+					merger.merge(text);
+				trie = Math.min(trie, (System.nanoTime() - start) / 1e3 / texts.length);
+			}
+			System.out.println(String.format(Locale.ROOT, "%d\t%.2f\t%.2f", subset.size(), regex, trie));
+		}
+	}
+
+	// the loop BiGramTriGramHandler used before the merger
+	private static String replaceAll(List<String> phrases, String text) {
+		for (String key : phrases)
+			if (text.contains(key))
+				text = text.replaceAll(key, " " + key.replaceAll(" ", "_") + " ");
+		return text;
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+import edu.siu.sentise.model.SentimentData;
+import edu.siu.sentise.preprocessing.InferencePipeline;
+import edu.siu.sentise.preprocessing.MyStopWordsHandler;
+import edu.siu.sentise.preprocessing.POSTagProcessor;
+import edu.siu.sentise.preprocessing.TextPreprocessor;
+
+/**
+ * Compares the negation scope modes on the oracle: annotation throughput of
+ * the POS tag stage, then the accuracy of a ten fold cross validation with
+ * otherwise default settings.
+ *
+ * Usage: NegationBenchmark [oracle file] [comments to time, 0 for all]
+ * [nocv]
+ */
+public class NegationBenchmark {
+
+	private static final String[] MODES = { POSTagProcessor.NEGATION_TREE, POSTagProcessor.NEGATION_DEP,
+			POSTagProcessor.NEGATION_POS };
+	private static final int WARMUP_COMMENTS = 20;
+
+	public static void main(String[] args) {
+		String oracleFile = args.length > 0 ? args[0] : Configuration.ORACLE_FILE_NAME;
+		int sampleSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		boolean crossValidate = !(args.length > 2 && args[2].equals("nocv"));
+
+		ArrayList<SentimentData> oracle = SentimentData.parseSentimentData(oracleFile);
+		if (sampleSize <= 0 || sampleSize > oracle.size())
+			sampleSize = oracle.size();
+
+		double[] commentsPerSecond = new double[MODES.length];
+		float[] accuracy = new float[MODES.length];
+		float[] kappa = new float[MODES.length];
+
+		for (int m = 0; m < MODES.length; m++) {
+			commentsPerSecond[m] = timeAnnotation(MODES[m], oracle, sampleSize);
+			if (crossValidate) {
+				SentiSE instance = new SentiSE();
+				instance.setOracleFileName(oracleFile);
+				instance.setPreprocessNegation(true);
+				instance.setNegationMode(MODES[m]);
+				CrossValidationResult result = instance.runSingleValidation();
+				if (result != null) {
+					accuracy[m] = result.getAccuracy();
+					kappa[m] = result.getKappa();
+				}
+			}
+		}
+
+		System.out.println("\nNegation scope benchmark, " + sampleSize + " comments timed");
+		System.out.println("mode\tcomments/s\tspeedup\taccuracy\tkappa");
+		for (int m = 0; m < MODES.length; m++) {
+			System.out.println(String.format(Locale.ROOT, "%s\t%.1f\t%.2fx\t%s\t%s", MODES[m], commentsPerSecond[m],
+					commentsPerSecond[m] / commentsPerSecond[0],
+					crossValidate ? String.format(Locale.ROOT, "%.2f", accuracy[m]) : "-",
+					crossValidate ? String.format(Locale.ROOT, "%.3f", kappa[m]) : "-"));
+		}
+	}
+
+	/**
+	 * Comments per second through the POS tag stage, on text already
+	 * through the stages before it. Model loading is left out.
+	 */
+	private static double timeAnnotation(String mode, ArrayList<SentimentData> oracle, int sampleSize) {
+		PreprocessingOptions options = new PreprocessingOptions();
+		options.setPreprocessNegation(true);
+		options.setNegationMode(mode);
+		MyStopWordsHandler stopWordHandler = options.createStopWordsHandler();
+		ArrayList<TextPreprocessor> stages = options.createPreprocessors(stopWordHandler);
+		InferencePipeline pipeline = new InferencePipeline(stages);
+
+		int posStage = -1;
+		for (int i = 0; i < stages.size(); i++)
+			if (stages.get(i) instanceof POSTagProcessor)
+				posStage = i;
+		POSTagProcessor posTagProcessor = (POSTagProcessor) stages.get(posStage);
+
+		String[] texts = new String[sampleSize];
+		for (int i = 0; i < sampleSize; i++)
+			texts[i] = pipeline.process(oracle.get(i).getText(), 0, posStage);
+
+		for (int i = 0; i < Math.min(WARMUP_COMMENTS, sampleSize); i++)
+			posTagProcessor.process(texts[i]);
+
+		long start = System.nanoTime();
+		for (String text : texts)
+			posTagProcessor.process(text);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.println(String.format(Locale.ROOT, "%s: %d comments in %.1f s (%s)", mode, sampleSize, seconds,
+				posTagProcessor.getAnnotators()));
+		return sampleSize / seconds;
+	}
+
+}
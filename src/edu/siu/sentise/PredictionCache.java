@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import edu.siu.sentise.util.TextHash;
+
+/**
+ * Size bounded LRU cache of class distributions, keyed by the
+ * {@link TextHash} of the normalized comment text (see
+ * {@link SentiSEPredictor#normalize}).
+ * Review comments repeat a lot ("LGTM", "+1", "thanks!"), and a hit skips
+ * the parse, the vectorization and the classifier.
+ *
+ * A cache belongs to one model at a time: attaching it to a predictor with
+ * {@link SentiSEPredictor#setCache(PredictionCache)} drops every entry
+ * scored by another model. Lookups and stores name the model they are for
+ * and are ignored for any other one, so a request still finishing on a
+ * replaced model cannot fill the cache of its successor.
+ */
+public class PredictionCache {
+
+	private final int maxEntries;
+	private final LinkedHashMap<Long, double[]> entries;
+	private Object model;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	public PredictionCache(int maxEntries) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("Cache size must be positive: " + maxEntries);
+		this.maxEntries = maxEntries;
+		// access ordered, so the eldest entry is the least recently used one
+		this.entries = new LinkedHashMap<Long, double[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Long, double[]> eldest) {
+				if (size() <= PredictionCache.this.maxEntries)
+					return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Returns a copy of the distribution model cached for key, or null on a
+	 * miss or when the cache is bound to another model.
+	 */
+	public synchronized double[] get(Object model, long key) {
+		double[] distribution = this.model == model ? entries.get(key) : null;
+		if (distribution == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return distribution.clone();
+	}
+
+	/**
+	 * Copies the distribution model cached for key into target and returns
+	 * true, or returns false on a miss, when the cache is bound to another
+	 * model or when target does not have the length of the entry.
+	 */
+	public synchronized boolean get(Object model, long key, double[] target) {
+		double[] distribution = this.model == model ? entries.get(key) : null;
+		if (distribution == null || distribution.length != target.length) {
+			misses++;
+			return false;
+		}
+		hits++;
+		System.arraycopy(distribution, 0, target, 0, distribution.length);
+		return true;
+	}
+
+	/**
+	 * Stores a copy of a distribution scored by model, unless the cache is
+	 * bound to another model by now.
+	 */
+	public synchronized void put(Object model, long key, double[] distribution) {
+		store(model, key, distribution.clone());
+	}
+
+	/**
+	 * Same as {@link #put(Object, long, double[])}, keeping distribution
+	 * itself: the caller must not change it afterwards.
+	 */
+	synchronized void store(Object model, long key, double[] distribution) {
+		if (this.model == model)
+			entries.put(key, distribution);
+	}
+
+	/**
+	 * Binds the cache to model, dropping all entries if it was bound to a
+	 * different one.
+	 */
+	public synchronized void bind(Object model) {
+		if (this.model != model) {
+			entries.clear();
+			this.model = model;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized String getStatistics() {
+		return "entries=" + entries.size() + " hits=" + hits + " misses=" + misses + " evictions=" + evictions;
+	}
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import edu.siu.sentise.factory.BasicFactory;
+import edu.siu.sentise.preprocessing.AncronymHandler;
+import edu.siu.sentise.preprocessing.BiGramTriGramHandler;
+import edu.siu.sentise.preprocessing.ContractionLoader;
+import edu.siu.sentise.preprocessing.EmoticonProcessor;
+import edu.siu.sentise.preprocessing.ExclamationHandler;
+import edu.siu.sentise.preprocessing.IdentifierProcessor;
+import edu.siu.sentise.preprocessing.MyStopWordsHandler;
+import edu.siu.sentise.preprocessing.POSTagProcessor;
+import edu.siu.sentise.preprocessing.ParseCache;
+import edu.siu.sentise.preprocessing.QuestionMarkHandler;
+import edu.siu.sentise.preprocessing.StopwordWithKeywords;
+import edu.siu.sentise.preprocessing.TextPreprocessor;
+import edu.siu.sentise.preprocessing.URLRemover;
+
+/**
+ * The preprocessing configuration of a training run. Training and scoring
+ * both build their stages from here so that they always produce the same
+ * features.
+ */
+public class PreprocessingOptions implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String contractionDictionary = Configuration.CONTRACTION_TEXT_FILE_NAME;
+	private String acronymDictionary = Configuration.ACRONYM_WORD_FILE;
+
+	private boolean categorizeEmoticon = false;
+	private boolean removeIdentifiers = false;
+	private boolean processExclamationMark = false;
+	private boolean processQuestionMark = false;
+	private boolean handleNGram = false;
+	private boolean removeStopwords = false;
+	private boolean removeKeywords = false;
+	private boolean applyPosTag = false;
+	private boolean keepOnlyImportantPos = false;
+	private boolean applyContextTag = false;
+	private boolean preprocessNegation = false;
+	private String negationMode = POSTagProcessor.NEGATION_TREE;
+	private int addSentiScoreType = 0;
+	private boolean markSlangWords = false;
+	private int annotationThreads = 1;
+	private int maxParseTokens = 0; // 0 for no limit
+	private long maxParseMillis = 0;
+	private String taggerModel = null; // null to tag with the CoreNLP pipeline
+	private boolean fastPath = false;
+	private transient String parseCacheFile = null; // a training run setting, not part of a saved model
+
+	public String getContractionDictionary() {
+		return contractionDictionary;
+	}
+
+	public void setContractionDictionary(String contractionDictionary) {
+		this.contractionDictionary = contractionDictionary;
+	}
+
+	public String getAcronymDictionary() {
+		return acronymDictionary;
+	}
+
+	public void setAcronymDictionary(String acronymDictionary) {
+		this.acronymDictionary = acronymDictionary;
+	}
+
+	public boolean isCategorizeEmoticon() {
+		return categorizeEmoticon;
+	}
+
+	public void setCategorizeEmoticon(boolean categorizeEmoticon) {
+		this.categorizeEmoticon = categorizeEmoticon;
+	}
+
+	public boolean isRemoveIdentifiers() {
+		return removeIdentifiers;
+	}
+
+	public void setRemoveIdentifiers(boolean removeIdentifiers) {
+		this.removeIdentifiers = removeIdentifiers;
+	}
+
+	public boolean isProcessExclamationMark() {
+		return processExclamationMark;
+	}
+
+	public void setProcessExclamationMark(boolean processExclamationMark) {
+		this.processExclamationMark = processExclamationMark;
+	}
+
+	public boolean isProcessQuestionMark() {
+		return processQuestionMark;
+	}
+
+	public void setProcessQuestionMark(boolean processQuestionMark) {
+		this.processQuestionMark = processQuestionMark;
+	}
+
+	public boolean isHandleNGram() {
+		return handleNGram;
+	}
+
+	public void setHandleNGram(boolean handleNGram) {
+		this.handleNGram = handleNGram;
+	}
+
+	public boolean isRemoveStopwords() {
+		return removeStopwords;
+	}
+
+	public void setRemoveStopwords(boolean removeStopwords) {
+		this.removeStopwords = removeStopwords;
+	}
+
+	public boolean isRemoveKeywords() {
+		return removeKeywords;
+	}
+
+	public void setRemoveKeywords(boolean removeKeywords) {
+		this.removeKeywords = removeKeywords;
+	}
+
+	public boolean isApplyPosTag() {
+		return applyPosTag;
+	}
+
+	public void setApplyPosTag(boolean applyPosTag) {
+		this.applyPosTag = applyPosTag;
+	}
+
+	public boolean isKeepOnlyImportantPos() {
+		return keepOnlyImportantPos;
+	}
+
+	public void setKeepOnlyImportantPos(boolean keepOnlyImportantPos) {
+		this.keepOnlyImportantPos = keepOnlyImportantPos;
+	}
+
+	public boolean isApplyContextTag() {
+		return applyContextTag;
+	}
+
+	public void setApplyContextTag(boolean applyContextTag) {
+		this.applyContextTag = applyContextTag;
+	}
+
+	public boolean isPreprocessNegation() {
+		return preprocessNegation;
+	}
+
+	public void setPreprocessNegation(boolean preprocessNegation) {
+		this.preprocessNegation = preprocessNegation;
+	}
+
+	public String getNegationMode() {
+		// models saved before the option existed always used the parse tree
+		return negationMode == null ? POSTagProcessor.NEGATION_TREE : negationMode;
+	}
+
+	public void setNegationMode(String negationMode) {
+		this.negationMode = negationMode;
+	}
+
+	public int getAddSentiScoreType() {
+		return addSentiScoreType;
+	}
+
+	public void setAddSentiScoreType(int addSentiScoreType) {
+		this.addSentiScoreType = addSentiScoreType;
+	}
+
+	public boolean isMarkSlangWords() {
+		return markSlangWords;
+	}
+
+	public void setMarkSlangWords(boolean markSlangWords) {
+		this.markSlangWords = markSlangWords;
+	}
+
+	public int getAnnotationThreads() {
+		return annotationThreads;
+	}
+
+	/**
+	 * Threads, each with its own CoreNLP pipeline, preprocessing a training
+	 * set. Does not change the output.
+	 */
+	public void setAnnotationThreads(int annotationThreads) {
+		this.annotationThreads = annotationThreads;
+	}
+
+	public int getMaxParseTokens() {
+		return maxParseTokens;
+	}
+
+	/**
+	 * Longest sentence, in tokens, that gets a parse tree; longer ones keep
+	 * their POS tags only. 0 for no limit.
+	 */
+	public void setMaxParseTokens(int maxParseTokens) {
+		this.maxParseTokens = maxParseTokens;
+	}
+
+	public long getMaxParseMillis() {
+		return maxParseMillis;
+	}
+
+	/**
+	 * Time budget for parsing one comment; the sentences left when it runs
+	 * out keep their POS tags only. 0 for no limit.
+	 */
+	public void setMaxParseMillis(long maxParseMillis) {
+		this.maxParseMillis = maxParseMillis;
+	}
+
+	public boolean isFastPath() {
+		return fastPath;
+	}
+
+	/**
+	 * Whether trivial comments skip CoreNLP and are tagged by the shared
+	 * tagger, see {@link POSTagProcessor#setFastPath(boolean)}.
+	 */
+	public void setFastPath(boolean fastPath) {
+		this.fastPath = fastPath;
+	}
+
+	public String getTaggerModel() {
+		return taggerModel;
+	}
+
+	/**
+	 * MaxentTagger model used instead of the CoreNLP pipeline when POS tags
+	 * are needed but no parse, see
+	 * {@link edu.siu.sentise.preprocessing.POSTagger}. null for the pipeline.
+	 */
+	public void setTaggerModel(String taggerModel) {
+		this.taggerModel = taggerModel;
+	}
+
+	public String getParseCacheFile() {
+		return parseCacheFile;
+	}
+
+	public void setParseCacheFile(String parseCacheFile) {
+		this.parseCacheFile = parseCacheFile;
+	}
+
+	public String getEmoticonDictionary() {
+		if (this.categorizeEmoticon)
+			return Configuration.EMOTICONS_CATEGORIZED;
+		else
+			return Configuration.EMOTICONS_FILE_NAME;
+	}
+
+	public String getStopWordDictionary() {
+		if (this.removeStopwords)
+			return Configuration.STOPWORDS_FILE_NAME;
+		else
+			return Configuration.EMPTY_FILE;
+	}
+
+	public MyStopWordsHandler createStopWordsHandler() {
+		if (this.removeKeywords)
+			return new StopwordWithKeywords(getStopWordDictionary(), Configuration.KEYWORD_LIST_FILE);
+		else
+			return new MyStopWordsHandler(getStopWordDictionary());
+	}
+
+	public ArrayList<TextPreprocessor> createPreprocessors(MyStopWordsHandler stopWordHandler) {
+		ArrayList<TextPreprocessor> preprocessors = new ArrayList<TextPreprocessor>();
+
+		// created first: it starts loading the CoreNLP models in the
+		// background while the dictionaries below are read
+		POSTagProcessor posTagProcessor = new POSTagProcessor(
+				BasicFactory.getPOSUtility(applyPosTag, keepOnlyImportantPos, applyContextTag, stopWordHandler),
+				this.preprocessNegation, getNegationMode(), addSentiScoreType, this.markSlangWords, this.maxParseTokens,
+				this.maxParseMillis);
+		if (this.annotationThreads > 1)
+			posTagProcessor.setNumWorkers(this.annotationThreads);
+		if (this.parseCacheFile != null)
+			posTagProcessor.setParseCache(ParseCache.open(this.parseCacheFile));
+		if (this.taggerModel != null)
+			posTagProcessor.setTaggerModel(this.taggerModel);
+		posTagProcessor.setFastPath(this.fastPath);
+
+		// common preprocessing steps, always applied
+		preprocessors.add(new ContractionLoader(this.contractionDictionary));
+		preprocessors.add(new URLRemover());
+		AncronymHandler acronymHandler = new AncronymHandler(this.acronymDictionary);
+		preprocessors.add(acronymHandler);
+		// identifier removal needs the case, and lower cases the text after it
+		preprocessors.add(new EmoticonProcessor(getEmoticonDictionary(), this.removeIdentifiers));
+
+		if (this.removeIdentifiers)
+			preprocessors.add(new IdentifierProcessor(true));
+
+		if (this.processExclamationMark)
+			preprocessors.add(new ExclamationHandler());
+
+		if (this.processQuestionMark)
+			preprocessors.add(new QuestionMarkHandler());
+
+		if (this.handleNGram)
+			preprocessors.add(new BiGramTriGramHandler());
+
+		// a comment that is just a known acronym does not need a parse
+		posTagProcessor.setFastPathPhrases(acronymHandler.getExpansions());
+		preprocessors.add(posTagProcessor);
+
+		return preprocessors;
+	}
+
+	/**
+	 * Options are equal when they build the same preprocessing stages; the
+	 * parse cache file of a training run is not compared.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof PreprocessingOptions))
+			return false;
+		PreprocessingOptions other = (PreprocessingOptions) obj;
+		return Arrays.equals(getComparedFields(), other.getComparedFields());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(getComparedFields());
+	}
+
+	private Object[] getComparedFields() {
+		return new Object[] { contractionDictionary, acronymDictionary, categorizeEmoticon, removeIdentifiers,
+				processExclamationMark, processQuestionMark, handleNGram, removeStopwords, removeKeywords, applyPosTag,
+				keepOnlyImportantPos, applyContextTag, preprocessNegation, getNegationMode(), addSentiScoreType,
+				markSlangWords, annotationThreads, maxParseTokens, maxParseMillis, taggerModel, fastPath };
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the predictor of a saved model file and replaces it when the file
+ * changes or {@link #reloadAsync()} is called. A new model is loaded and
+ * warmed up on a background thread and then swapped in with a single
+ * reference update: callers that already fetched the old predictor with
+ * {@link #get()} finish on it, later callers get the new one, and nobody
+ * waits for the load. A new model with the same preprocessing options as
+ * the current one shares its already loaded CoreNLP pipelines.
+ */
+public class ReloadablePredictor {
+
+	private static final String[] WARM_UP_TEXTS = {
+			"Thanks for the quick fix, this looks much better than the previous version.",
+			"This change does not work and breaks the build on every platform we support.",
+			"Could you please add a unit test for the new method before we merge it?" };
+
+	private final String modelFileName;
+	private final AtomicReference<SentiSEPredictor> current = new AtomicReference<SentiSEPredictor>();
+	private final ExecutorService loader;
+	private final PredictionCache cache;
+	private final int workers;
+
+	private volatile long loadedAt = 0;
+	private volatile int generation = 0;
+
+	public ReloadablePredictor(String modelFileName, PredictionCache cache) {
+		this(modelFileName, cache, 1);
+	}
+
+	/**
+	 * Loads the model synchronously; {@link #get()} returns null if that
+	 * fails. cache may be null. Every model is loaded with a CoreNLP
+	 * pipeline for each of the workers threads scoring with it.
+	 */
+	public ReloadablePredictor(String modelFileName, PredictionCache cache, int workers) {
+		this.modelFileName = modelFileName;
+		this.cache = cache;
+		this.workers = workers;
+		this.loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "sentise-model-loader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		reload();
+	}
+
+	public SentiSEPredictor get() {
+		return current.get();
+	}
+
+	/**
+	 * Loads, warms up and swaps in the model file on the calling thread.
+	 * The current predictor is kept if the file cannot be loaded.
+	 */
+	public synchronized boolean reload() {
+		File modelFile = new File(modelFileName);
+		long modified = modelFile.lastModified();
+
+		SentiSEPredictor predictor = WekaClassifierBuilder.getSavedPredictor(modelFileName);
+		if (predictor == null)
+			return false;
+
+		SentiSEPredictor old = current.get();
+		try {
+			long start = System.currentTimeMillis();
+			if (old != null && predictor.sharePipeline(old))
+				System.err.println("Preprocessing options unchanged, reusing the loaded pipelines");
+			else
+				predictor.preparePipelines(workers);
+			predictor.warmUp(WARM_UP_TEXTS);
+			System.err.println("Warmed up model in " + (System.currentTimeMillis() - start) + " ms");
+		} catch (Exception e) {
+			System.err.println("Model failed to score the warm up texts, keeping the current one");
+			e.printStackTrace();
+			return false;
+		}
+
+		if (cache != null)
+			predictor.setCache(cache);
+		current.set(predictor);
+		// requests still running on the old model finish on it, but must not
+		// write their results into the cache now holding the new model's
+		if (old != null && old != predictor)
+			old.setCache(null);
+		loadedAt = modified;
+		generation++;
+		return true;
+	}
+
+	/**
+	 * Queues a reload on the background loader thread.
+	 */
+	public Future<Boolean> reloadAsync() {
+		return loader.submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return reload();
+			}
+		});
+	}
+
+	/**
+	 * Polls the model file every intervalSeconds and reloads it when its
+	 * modification time changes. Writers should replace the file atomically
+	 * (write elsewhere, then rename) so a half written model is never read.
+	 */
+	public void watch(final long intervalSeconds) {
+		Thread watcher = new Thread(new Runnable() {
+			public void run() {
+				File modelFile = new File(modelFileName);
+				try {
+					while (true) {
+						TimeUnit.SECONDS.sleep(intervalSeconds);
+						long modified = modelFile.lastModified();
+						if (modified != 0 && modified != loadedAt) {
+							System.err.println("Model file changed, reloading: " + modelFileName);
+							try {
+								if (!reloadAsync().get())
+									loadedAt = modified; // do not retry the same broken file
+							} catch (Exception e) {
+								e.printStackTrace();
+							}
+						}
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "sentise-model-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	public void shutdown() {
+		loader.shutdownNow();
+	}
+
+	public String getModelFileName() {
+		return modelFileName;
+	}
+
+	/**
+	 * Number of models loaded so far, including the first one.
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	public PredictionCache getCache() {
+		return cache;
+	}
+
+}
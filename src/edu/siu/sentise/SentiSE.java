@@ -20,12 +20,18 @@ package edu.siu.sentise;
 
 import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Random;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -36,21 +42,13 @@ import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 
-import edu.siu.sentise.factory.BasicFactory;
 import edu.siu.sentise.model.SentimentData;
-import edu.siu.sentise.preprocessing.AncronymHandler;
-import edu.siu.sentise.preprocessing.BiGramTriGramHandler;
-import edu.siu.sentise.preprocessing.ContractionLoader;
-import edu.siu.sentise.preprocessing.EmoticonProcessor;
-import edu.siu.sentise.preprocessing.ExclamationHandler;
-import edu.siu.sentise.preprocessing.IdentifierProcessor;
+import edu.siu.sentise.preprocessing.InferencePipeline;
 import edu.siu.sentise.preprocessing.MyStopWordsHandler;
 import edu.siu.sentise.preprocessing.POSTagProcessor;
-import edu.siu.sentise.preprocessing.QuestionMarkHandler;
+import edu.siu.sentise.preprocessing.POSTagger;
 import edu.siu.sentise.preprocessing.StanfordCoreNLPLemmatizer;
-import edu.siu.sentise.preprocessing.StopwordWithKeywords;
 import edu.siu.sentise.preprocessing.TextPreprocessor;
-import edu.siu.sentise.preprocessing.URLRemover;
 import edu.siu.sentise.util.Util;
 import weka.attributeSelection.AttributeSelection;
 import weka.attributeSelection.InfoGainAttributeEval;
@@ -61,6 +59,7 @@ import weka.core.Instances;
 import weka.core.converters.ConverterUtils.DataSource;
 import weka.core.stemmers.NullStemmer;
 import weka.core.stemmers.SnowballStemmer;
+import weka.core.stemmers.Stemmer;
 import weka.core.tokenizers.WordTokenizer;
 import weka.filters.Filter;
 import weka.filters.unsupervised.attribute.Remove;
@@ -68,8 +67,8 @@ import weka.filters.unsupervised.attribute.StringToWordVector;
 
 public class SentiSE {
 
-	private HashMap<Integer, Integer> classMapping;
 	private Classifier classifier;
+	private SentiSEPredictor predictor;
 	private String emoticonDictionary = Configuration.EMOTICONS_FILE_NAME;
 	private String stopWordDictionary = Configuration.EMPTY_FILE;
 	private String contractionDictionary = Configuration.CONTRACTION_TEXT_FILE_NAME;
@@ -89,6 +88,7 @@ public class SentiSE {
 	private boolean keepOnlyImportantPos = false; // keepOnlyImportantPos means keeping only verbs,adjectives and
 													// adverbs
 	private boolean preprocessNegation = false; // preprocessNegation means handle the negation effects on other POS
+	private String negationMode = POSTagProcessor.NEGATION_TREE; // how the scope of a negation is found
 	private boolean applyContextTag = false; // Apply context information of a word like
 												// VP,ADVP or NP
 	private int addSentiScoreType = 0; // if a sentence contains sentiment word. Add a correspponding string with it.
@@ -106,6 +106,17 @@ public class SentiSE {
 	private static int REPEAT_COUNT = 10;
 	private boolean categorizeEmoticon = false;
 	private String outputFile;
+	private String modelFileName;
+	private String scoreInput;
+	private String scoreFormat;
+	private int scoreBatchSize = 256;
+	private int cacheSize = 0;
+	private int annotationThreads = 1;
+	private int maxParseTokens = 0;
+	private long maxParseMillis = 0;
+	private String taggerModel = null;
+	private boolean useParseCache = false;
+	private boolean fastPath = false;
 	Instances trainingInstances = null;
 
 	private MyStopWordsHandler stopWordHandler;
@@ -154,6 +165,14 @@ public class SentiSE {
 		this.preprocessNegation = preprocessNegation;
 	}
 
+	public String getNegationMode() {
+		return negationMode;
+	}
+
+	public void setNegationMode(String negationMode) {
+		this.negationMode = negationMode;
+	}
+
 	public boolean isCrossValidate() {
 		return crossValidate;
 	}
@@ -198,16 +217,39 @@ public class SentiSE {
 		this.removeStopwords = useStopWords;
 	}
 
-	private ArrayList<TextPreprocessor> preprocessPipeline = new ArrayList<TextPreprocessor>();
+	private PreprocessingOptions preprocessingOptions;
+	private InferencePipeline inferencePipeline;
 
 	public SentiSE() {
 		this.stopWordHandler=new MyStopWordsHandler(this.stopWordDictionary);
-		
-		// common preprocessing steps, always applied
-		preprocessPipeline.add(new ContractionLoader(this.contractionDictionary));
-		preprocessPipeline.add(new URLRemover());
-		preprocessPipeline.add(new AncronymHandler(this.acronymDictionary));
+	}
 
+	public PreprocessingOptions getPreprocessingOptions() {
+		PreprocessingOptions options = new PreprocessingOptions();
+		options.setContractionDictionary(this.contractionDictionary);
+		options.setAcronymDictionary(this.acronymDictionary);
+		options.setCategorizeEmoticon(this.categorizeEmoticon);
+		options.setRemoveIdentifiers(this.removeIdentifiers);
+		options.setProcessExclamationMark(this.processExclamationMark);
+		options.setProcessQuestionMark(this.processQuestionMark);
+		options.setHandleNGram(this.handleNGram);
+		options.setRemoveStopwords(this.removeStopwords);
+		options.setRemoveKeywords(this.removeKeywords);
+		options.setApplyPosTag(this.applyPosTag);
+		options.setKeepOnlyImportantPos(this.keepOnlyImportantPos);
+		options.setApplyContextTag(this.applyContextTag);
+		options.setPreprocessNegation(this.preprocessNegation);
+		options.setNegationMode(this.negationMode);
+		options.setAddSentiScoreType(this.addSentiScoreType);
+		options.setMarkSlangWords(this.markSlangWords);
+		options.setAnnotationThreads(this.annotationThreads);
+		options.setMaxParseTokens(this.maxParseTokens);
+		options.setMaxParseMillis(this.maxParseMillis);
+		options.setTaggerModel(this.taggerModel);
+		options.setFastPath(this.fastPath);
+		if (this.useParseCache)
+			options.setParseCacheFile(Configuration.PARSE_CACHE_FILE);
+		return options;
 	}
 
 	private void createresultsFiles() {
@@ -229,50 +271,25 @@ public class SentiSE {
 		System.out.println("Reading oracle file...");
 		ArrayList<SentimentData> sentimentDataList = SentimentData.parseSentimentData(this.oracleFileName);
 
-		if (this.categorizeEmoticon)
-			this.emoticonDictionary = Configuration.EMOTICONS_CATEGORIZED;
-		else
-			this.emoticonDictionary = Configuration.EMOTICONS_FILE_NAME;
-		
-
-		preprocessPipeline.add(new EmoticonProcessor(this.emoticonDictionary));
-		
-		if (this.removeIdentifiers)
-			preprocessPipeline.add(new IdentifierProcessor());
-		
-		if (this.processExclamationMark)
-			preprocessPipeline.add(new ExclamationHandler());
-
-		if (this.processQuestionMark)
-			preprocessPipeline.add(new QuestionMarkHandler());
-		
-		if (this.handleNGram)
-			preprocessPipeline.add(new BiGramTriGramHandler());
-		
-		if(this.removeStopwords)
-		{
-			this.stopWordDictionary=Configuration.STOPWORDS_FILE_NAME;
-			this.stopWordHandler=new MyStopWordsHandler(this.stopWordDictionary);
-		}
-		
-		if (this.removeKeywords)
-			this.stopWordHandler = new StopwordWithKeywords(stopWordDictionary, Configuration.KEYWORD_LIST_FILE);
+		this.preprocessingOptions = getPreprocessingOptions();
+		this.emoticonDictionary = preprocessingOptions.getEmoticonDictionary();
+		this.stopWordDictionary = preprocessingOptions.getStopWordDictionary();
+		this.stopWordHandler = preprocessingOptions.createStopWordsHandler();
 
 		System.out.println("Preprocessing text ..");
-		preprocessPipeline.add(new POSTagProcessor(
-				BasicFactory.getPOSUtility(applyPosTag, keepOnlyImportantPos, applyContextTag, stopWordHandler),
-				this.preprocessNegation, addSentiScoreType,this.markSlangWords));
+		ArrayList<TextPreprocessor> preprocessPipeline = preprocessingOptions.createPreprocessors(this.stopWordHandler);
 
-		for (TextPreprocessor process : preprocessPipeline) {
-			sentimentDataList = process.apply(sentimentDataList);
-		}
+		this.inferencePipeline = new InferencePipeline(preprocessPipeline);
+		sentimentDataList = this.inferencePipeline.apply(sentimentDataList,
+				preprocessingOptions.getAnnotationThreads());
 
 		/*
 		 * for(int i= 0;i<sentimentDataList.size();i++)
 		 * System.out.println(sentimentDataList.get(i).getText());
 		 */
 		System.out.println("Converting to WEKA format ..");
-		Instances rawInstance = ARFFGenerator.generateTestData(sentimentDataList);
+		Instances rawInstance = ARFFGenerator.generateTestData(sentimentDataList,
+				this.inferencePipeline.getFeatureNames());
 
 		System.out.println("Converting string to vector..");
 		this.trainingInstances = generateFilteredInstance(rawInstance, true);
@@ -308,40 +325,61 @@ public class SentiSE {
 		this.classifier = WekaClassifierBuilder.createClassifierFromInstance(this.algorithm, this.trainingInstances);
 		WekaClassifierBuilder.storeClassfierModel("models/" + this.algorithm + "." + this.oracleFileName + ".model",
 				this.classifier);
+		this.predictor = new SentiSEPredictor(this.preprocessingOptions, this.inferencePipeline,
+				this.trainingInstances, this.classifier, createStemmer(), this.stopWordHandler);
 
 	}
 
-	public int[] getSentimentScore(ArrayList<String> sentences) throws Exception {
-
-		ArrayList<String> sentiText = new ArrayList<String>();
-		for (int i = 0; i < sentences.size(); i++) {
-			sentiText.add(preprocessText(sentences.get(i)));
-		}
+	public void trainAndSaveModel(String fileName) throws Exception {
+		createresultsFiles();
+		reloadClassifier();
+		if (WekaClassifierBuilder.storePredictor(fileName, this.predictor))
+			System.out.println("Model saved as:" + fileName);
+	}
 
-		int[] computedScores = new int[sentences.size()];
+	public void runBatchScoring() throws Exception {
+		SentiSEPredictor savedPredictor = WekaClassifierBuilder.getSavedPredictor(this.modelFileName);
+		if (savedPredictor == null)
+			return;
 
-		Instances testInstances = generateInstanceFromList(sentiText);
+		if (this.cacheSize > 0)
+			savedPredictor.setCache(new PredictionCache(this.cacheSize));
 
-		for (int j = 0; j < testInstances.size(); j++) {
+		String format = this.scoreFormat;
+		if (format == null)
+			format = BatchScorer.getFormatForFile(this.scoreInput);
 
-			computedScores[j] = classMapping.get((int) classifier.classifyInstance(testInstances.get(j)));
+		Reader input = this.scoreInput.equals("-") ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+				: new InputStreamReader(new FileInputStream(this.scoreInput), StandardCharsets.UTF_8);
+		Writer output = this.outputFile == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+				: new OutputStreamWriter(new FileOutputStream(this.outputFile), StandardCharsets.UTF_8);
 
+		try {
+			long count = new BatchScorer(savedPredictor, format, this.scoreBatchSize).score(input, output);
+			System.err.println("Scored records: " + count);
+			if (savedPredictor.getCache() != null)
+				System.err.println("Prediction cache: " + savedPredictor.getCache().getStatistics());
+		} finally {
+			input.close();
+			output.close();
 		}
-		return computedScores;
 	}
 
-	private String preprocessText(String text) {
-		// text = contractionHandler.preprocessContractions(text);
-		// text = URLRemover.removeURL(text);
-		// text = emoticonHandler.preprocessEmoticons(text);
-		// text = ParserUtility.preprocessPOStags(text);
-		return text;
+	public SentiSEPredictor getPredictor() {
+		return predictor;
 	}
 
-	private Instances generateInstanceFromList(ArrayList<String> sentiText) throws Exception {
-		Instances instance = ARFFGenerator.generateTestDataFromString(sentiText);
-		return generateFilteredInstance(instance, false);
+	public int[] getSentimentScore(ArrayList<String> sentences) throws Exception {
+		return predictor.predict(sentences);
+	}
 
+	/**
+	 * Class probabilities of each sentence, written into buffer when it is
+	 * large enough. Columns are ordered like
+	 * {@link SentiSEPredictor#getClassLabel(int)}.
+	 */
+	public double[][] getSentimentDistributions(ArrayList<String> sentences, double[][] buffer) throws Exception {
+		return predictor.distributions(sentences, buffer);
 	}
 
 	private Instances generateFilteredInstance(Instances instance, boolean disardLowFreqTerms) throws Exception {
@@ -353,15 +391,7 @@ public class SentiSE {
 
 		
 		filter.setStopwordsHandler(this.stopWordHandler);
-
-		if (this.useStemmer) {
-			SnowballStemmer snowballStemmer = new SnowballStemmer();
-			filter.setStemmer(snowballStemmer);
-		} else if (this.useLemmatizer) {
-			StanfordCoreNLPLemmatizer lemmatizer = new StanfordCoreNLPLemmatizer();
-			filter.setStemmer(lemmatizer);
-		} else
-			filter.setStemmer(new NullStemmer());
+		filter.setStemmer(createStemmer());
 
 		System.out.println(useLemmatizer + " " + useStemmer + "  " + filter.getStemmer());
 		filter.setLowerCaseTokens(true);
@@ -376,6 +406,15 @@ public class SentiSE {
 
 	}
 
+	private Stemmer createStemmer() {
+		if (this.useStemmer)
+			return new SnowballStemmer();
+		else if (this.useLemmatizer)
+			return new StanfordCoreNLPLemmatizer();
+		else
+			return new NullStemmer();
+	}
+
 	private Instances getInstancesFilteredByInformationgain(Instances instances) {
 		try {
 			AttributeSelection filter = new AttributeSelection();
@@ -542,6 +581,10 @@ public class SentiSE {
 		builder.append("\n");
 		builder.append("Negation preprocess: " + this.preprocessNegation);
 		builder.append("\n");
+		if (this.preprocessNegation) {
+			builder.append("Negation scope: " + this.negationMode);
+			builder.append("\n");
+		}
 		builder.append("Context tag: " + this.applyContextTag);
 		builder.append("\n");
 		builder.append("POS tag: " + this.applyPosTag);
@@ -563,6 +606,8 @@ public class SentiSE {
 		builder.append("\n");
 		builder.append("Lemmatization:" + this.useLemmatizer);
 		builder.append("\n");
+		builder.append("Fast path:" + this.fastPath);
+		builder.append("\n");
 		builder.append("Only V, Adv, Adj:" + this.keepOnlyImportantPos);
 		builder.append("\n");
 		builder.append("Mark sentiment words:" + this.addSentiScoreType);
@@ -584,6 +629,17 @@ public class SentiSE {
 		return (float) average;
 	}
 
+	/**
+	 * A single ten fold cross validation on freshly preprocessed data,
+	 * seeded like the runs of {@link #runRepeatedValidation()}.
+	 */
+	public CrossValidationResult runSingleValidation() {
+		createresultsFiles();
+		setForceRcreateTrainingData(true);
+		initRand(5555);
+		return tenFoldCV();
+	}
+
 	public void runRepeatedValidation() {
 		createresultsFiles();
 		ArrayList<CrossValidationResult> cvResults = new ArrayList<CrossValidationResult>();
@@ -694,6 +750,20 @@ public class SentiSE {
 		if (!instance.isCommandLineParsed(args))
 			return;
 
+		try {
+			if (instance.scoreInput != null) {
+				instance.runBatchScoring();
+				return;
+			}
+			if (instance.modelFileName != null) {
+				instance.trainAndSaveModel(instance.modelFileName);
+				return;
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			return;
+		}
+
 		//instance.runCVWithSameConfig();
 		instance.runRepeatedValidation();
 
@@ -710,8 +780,9 @@ public class SentiSE {
 		options.addOption(Option.builder("help").hasArg(false).desc("Prints help message").build());
 		options.addOption(Option.builder("root").hasArg(true)
 				.desc("Word normalization.\n 0=None (Default) | 1=Stemming | 2=Lemmatization ").build());
-		options.addOption(Option.builder("negate").hasArg(false)
-				.desc("Prefix words in negative context\n Default: False").build());
+		options.addOption(Option.builder("negate").hasArg(true).optionalArg(true).argName("scope")
+				.desc("Prefix words in negative context\n Default: False. The scope of a negation comes from: tree= constituency parse (default) | dep= dependency parse | pos= POS tags, up to the end of the clause")
+				.build());
 		options.addOption(Option.builder("tag").hasArg(true)
 				.desc("Add tags to words.\n0=None (Default)| 1= POS | 2=Context ").build());
 		options.addOption(Option.builder("ngram").hasArg(false).desc("Use ngrams. Default: False").build());
@@ -731,6 +802,36 @@ public class SentiSE {
 		options.addOption(Option.builder("allwords").hasArg(false).desc("Remove stop words").build());
 		options.addOption(Option.builder("slang").hasArg(false).desc("Count slang words").build());
 
+		options.addOption(Option.builder("model").hasArg(true)
+				.desc("Model file. Trains on the oracle and saves the model, or loads it with -score").build());
+		options.addOption(Option.builder("score").hasArg(true)
+				.desc("Score comments from a file (- for stdin) with the -model. "
+						+ "Writes id,label,confidence,stripped rows to -output or stdout")
+				.build());
+		options.addOption(Option.builder("format").hasArg(true)
+				.desc("Input format for -score.\n jsonl | csv | tsv. Default: from file extension, else jsonl").build());
+		options.addOption(Option.builder("batch").hasArg(true).desc("Micro-batch size for -score. Default: 256").build());
+		options.addOption(Option.builder("threads").hasArg(true)
+				.desc("Threads preprocessing the oracle, each loads its own CoreNLP models. Default: 1").build());
+		options.addOption(Option.builder("maxparselen").hasArg(true)
+				.desc("Longest sentence, in tokens, to build a parse tree for; longer ones keep POS tags only. Default: 0 (no limit)")
+				.build());
+		options.addOption(Option.builder("parsetime").hasArg(true)
+				.desc("Milliseconds of parsing per comment; sentences after that keep POS tags only. Default: 0 (no limit)")
+				.build());
+		options.addOption(Option.builder("tagger").hasArg(true)
+				.desc("Tag with a shared MaxentTagger instead of the CoreNLP pipeline when no parse is needed.\n left3words (fast) | bidirectional. Default: CoreNLP pipeline")
+				.build());
+		options.addOption(Option.builder("fastpath").hasArg(false)
+				.desc("Tag comments of up to three words, or only emoticons or a known acronym, with the shared tagger instead of CoreNLP. Not with -tag context tags")
+				.build());
+		options.addOption(Option.builder("parsecache").hasArg(false)
+				.desc("Keep CoreNLP parses of the oracle in " + Configuration.PARSE_CACHE_FILE
+						+ " and reuse them in later runs")
+				.build());
+		options.addOption(Option.builder("cache").hasArg(true)
+				.desc("Predictions to cache for repeated comments with -score. Default: 0 (no cache)").build());
+
 		Option termFreq = Option.builder("minfreq").hasArg()
 				.desc("Minimum frequecy required to be considered as a feature. Default: 5").build();
 		termFreq.setType(Number.class);
@@ -775,6 +876,12 @@ public class SentiSE {
 
 			if (commandLine.hasOption("negate")) {
 				setPreprocessNegation(true);
+				String scope = commandLine.getOptionValue("negate", POSTagProcessor.NEGATION_TREE);
+				if (scope.equals(POSTagProcessor.NEGATION_TREE) || scope.equals(POSTagProcessor.NEGATION_DEP)
+						|| scope.equals(POSTagProcessor.NEGATION_POS))
+					setNegationMode(scope);
+				else
+					printUsageAndExit(options, formatter);
 			}
 			
 			if (commandLine.hasOption("allwords")) {
@@ -870,6 +977,58 @@ public class SentiSE {
 				this.maxWordsToKeep = Integer.parseInt(commandLine.getOptionValue("maxfeatures"));
 			}
 
+			if (commandLine.hasOption("model")) {
+				this.modelFileName = commandLine.getOptionValue("model");
+			}
+
+			if (commandLine.hasOption("score")) {
+				if (this.modelFileName == null)
+					printUsageAndExit(options, formatter);
+				this.scoreInput = commandLine.getOptionValue("score");
+			}
+
+			if (commandLine.hasOption("format")) {
+				this.scoreFormat = commandLine.getOptionValue("format");
+			}
+
+			if (commandLine.hasOption("batch")) {
+				this.scoreBatchSize = Integer.parseInt(commandLine.getOptionValue("batch"));
+			}
+
+			if (commandLine.hasOption("threads")) {
+				this.annotationThreads = Integer.parseInt(commandLine.getOptionValue("threads"));
+			}
+
+			if (commandLine.hasOption("maxparselen")) {
+				this.maxParseTokens = Integer.parseInt(commandLine.getOptionValue("maxparselen"));
+			}
+
+			if (commandLine.hasOption("parsetime")) {
+				this.maxParseMillis = Long.parseLong(commandLine.getOptionValue("parsetime"));
+			}
+
+			if (commandLine.hasOption("tagger")) {
+				String tagger = commandLine.getOptionValue("tagger");
+				if (tagger.equals("left3words"))
+					this.taggerModel = POSTagger.MODEL_LEFT3WORDS;
+				else if (tagger.equals("bidirectional"))
+					this.taggerModel = POSTagger.MODEL_BIDIRECTIONAL;
+				else
+					printUsageAndExit(options, formatter);
+			}
+
+			if (commandLine.hasOption("parsecache")) {
+				this.useParseCache = true;
+			}
+
+			if (commandLine.hasOption("fastpath")) {
+				this.fastPath = true;
+			}
+
+			if (commandLine.hasOption("cache")) {
+				this.cacheSize = Integer.parseInt(commandLine.getOptionValue("cache"));
+			}
+
 		} catch (ParseException e) {
 			e.printStackTrace();
 
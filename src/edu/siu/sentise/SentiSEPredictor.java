@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.siu.sentise.preprocessing.ContractionLoader;
+import edu.siu.sentise.preprocessing.InferencePipeline;
+import edu.siu.sentise.preprocessing.MyStopWordsHandler;
+import edu.siu.sentise.preprocessing.POSTagProcessor;
+import edu.siu.sentise.preprocessing.URLRemover;
+import edu.siu.sentise.util.ResourcePool;
+import edu.siu.sentise.util.TextHash;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SerializedObject;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+import weka.core.stemmers.Stemmer;
+import weka.core.stopwords.StopwordsHandler;
+import weka.core.tokenizers.WordTokenizer;
+
+/**
+ * Scores text with a trained classifier without refitting the word vector
+ * filter. The dictionary and the IDF weights are frozen from the filtered
+ * training instances, so every comment is mapped onto exactly the features
+ * the classifier was trained on, independent of the rest of the batch.
+ * The sentiment and slang word counts of the POS tag stage are copied to
+ * their numeric attributes as they are.
+ *
+ * A predictor is serializable as a self contained model: the preprocessing
+ * stages are rebuilt from the stored options when it is read back, on first
+ * use, unless {@link #sharePipeline(SentiSEPredictor)} hands it those of a
+ * predictor with the same options.
+ *
+ * All methods may be called from many threads at once. Stemmers keep state
+ * between calls, so each caller borrows its own copy from a pool, and the
+ * classifier itself (InputMappedClassifier caches its attribute mapping)
+ * is only entered by one thread at a time.
+ */
+public class SentiSEPredictor implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final double TF_PRESENT = Math.log(2); // TF transform of a word seen in the document
+
+	private final PreprocessingOptions options;
+	private transient volatile InferencePipeline pipeline; // written after the stop words and stage count
+	private transient StopwordsHandler stopwordsHandler;
+	private final Classifier classifier;
+	private final Instances header;
+	private final HashMap<String, Integer> dictionary;
+	private int[] featureIndices; // attribute of each numeric preprocessing feature, -1 if absent
+	private final double[] idfWeights;
+	private final int[] classLabels;
+	private final Stemmer stemmer;
+	private transient ResourcePool<Stemmer> stemmers;
+	private transient int normalizationStages;
+	private transient volatile PredictionCache cache;
+
+	public SentiSEPredictor(PreprocessingOptions options, InferencePipeline pipeline, Instances trainingInstances,
+			Classifier classifier, Stemmer stemmer, StopwordsHandler stopwordsHandler) {
+		this.options = options;
+		this.pipeline = pipeline;
+		this.classifier = classifier;
+		this.stemmer = stemmer;
+		this.stopwordsHandler = stopwordsHandler;
+		this.header = new Instances(trainingInstances, 0);
+
+		int numAttributes = header.numAttributes();
+		int classIndex = header.classIndex();
+
+		String[] featureNames = pipeline.getFeatureNames();
+		featureIndices = new int[featureNames.length];
+		for (int f = 0; f < featureNames.length; f++) {
+			Attribute attribute = header.attribute(featureNames[f]);
+			featureIndices[f] = attribute == null ? -1 : attribute.index();
+		}
+
+		dictionary = new HashMap<String, Integer>(numAttributes * 2);
+		for (int i = 0; i < numAttributes; i++) {
+			if (i != classIndex && getFeatureSlot(i) < 0)
+				dictionary.put(header.attribute(i).name(), i);
+		}
+
+		// StringToWordVector does not expose its document counts, but a word
+		// has a non zero weight exactly in the training documents containing it
+		int[] documentCounts = new int[numAttributes];
+		for (Instance instance : trainingInstances) {
+			for (int j = 0; j < instance.numValues(); j++) {
+				int index = instance.index(j);
+				if (index != classIndex && instance.valueSparse(j) != 0)
+					documentCounts[index]++;
+			}
+		}
+
+		// a word present in every document has zero IDF and never shows up
+		// as non zero, so a zero count maps to a zero weight as well
+		idfWeights = new double[numAttributes];
+		double numDocuments = trainingInstances.numInstances();
+		for (int i = 0; i < numAttributes; i++) {
+			if (documentCounts[i] > 0)
+				idfWeights[i] = Math.log(numDocuments / documentCounts[i]);
+		}
+
+		Attribute classAttribute = header.classAttribute();
+		classLabels = new int[classAttribute.numValues()];
+		for (int i = 0; i < classLabels.length; i++)
+			classLabels[i] = Integer.parseInt(classAttribute.value(i));
+
+		this.stemmers = createStemmerPool();
+		this.normalizationStages = countNormalizationStages(pipeline);
+	}
+
+	/**
+	 * The leading contraction and URL stages only normalize the raw text;
+	 * their output is what the prediction cache is keyed on.
+	 */
+	private static int countNormalizationStages(InferencePipeline pipeline) {
+		int count = 0;
+		while (count < pipeline.getNumStages() && (pipeline.getStage(count) instanceof ContractionLoader
+				|| pipeline.getStage(count) instanceof URLRemover))
+			count++;
+		return count;
+	}
+
+	private ResourcePool<Stemmer> createStemmerPool() {
+		return new ResourcePool<Stemmer>(Runtime.getRuntime().availableProcessors()) {
+			protected Stemmer create() {
+				try {
+					return (Stemmer) new SerializedObject(stemmer).getObject();
+				} catch (Exception e) {
+					throw new IllegalStateException("Unable to copy the stemmer", e);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Position in the feature array of the numeric feature stored in
+	 * attribute index, or -1 for a word attribute.
+	 */
+	private int getFeatureSlot(int index) {
+		for (int f = 0; f < featureIndices.length; f++)
+			if (featureIndices[f] == index)
+				return f;
+		return -1;
+	}
+
+	/**
+	 * A feature array for {@link #preprocessNormalized(String, double[])}.
+	 */
+	public double[] createFeatures() {
+		return new double[featureIndices.length];
+	}
+
+	public Instance vectorize(String text, double[] features) {
+		WordTokenizer tokenizer = new WordTokenizer();
+		tokenizer.setDelimiters(Configuration.DELIMITERS);
+		tokenizer.tokenize(text);
+
+		int classIndex = header.classIndex();
+		int[] indices = new int[16];
+		int count = 0;
+		indices[count++] = classIndex;
+
+		getPipeline(); // builds the stop word handler as well
+		Stemmer localStemmer = stemmers.borrow();
+		try {
+			while (tokenizer.hasMoreElements()) {
+				String word = localStemmer.stem(tokenizer.nextElement().toLowerCase());
+				if (stopwordsHandler.isStopword(word))
+					continue;
+
+				Integer index = dictionary.get(word);
+				if (index == null)
+					continue;
+
+				if (count == indices.length)
+					indices = Arrays.copyOf(indices, count * 2);
+				indices[count++] = index;
+			}
+		} finally {
+			stemmers.release(localStemmer);
+		}
+
+		for (int f = 0; f < featureIndices.length; f++) {
+			if (featureIndices[f] < 0 || features == null || features[f] == 0)
+				continue;
+			if (count == indices.length)
+				indices = Arrays.copyOf(indices, count * 2);
+			indices[count++] = featureIndices[f];
+		}
+
+		Arrays.sort(indices, 0, count);
+
+		int[] sparseIndices = new int[count];
+		double[] sparseValues = new double[count];
+		int numValues = 0;
+		for (int i = 0; i < count; i++) {
+			int index = indices[i];
+			if (numValues > 0 && sparseIndices[numValues - 1] == index)
+				continue;
+
+			sparseIndices[numValues] = index;
+			int slot = getFeatureSlot(index);
+			if (index == classIndex)
+				sparseValues[numValues] = Utils.missingValue();
+			else if (slot >= 0)
+				sparseValues[numValues] = features[slot];
+			else
+				sparseValues[numValues] = TF_PRESENT * idfWeights[index];
+			numValues++;
+		}
+
+		Instance instance = new SparseInstance(1.0, Arrays.copyOf(sparseValues, numValues),
+				Arrays.copyOf(sparseIndices, numValues), header.numAttributes());
+		instance.setDataset(header);
+		return instance;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		if (featureIndices == null)
+			featureIndices = new int[0]; // saved before numeric features existed
+		// an older model trained with -sentiword or -slang had the counts in its text
+		if (POSTagProcessor.getNumFeatures(options.getAddSentiScoreType(),
+				options.isMarkSlangWords()) != featureIndices.length)
+			throw new InvalidObjectException("model predates numeric sentiment features, retrain it");
+		this.stemmers = createStemmerPool();
+	}
+
+	/**
+	 * Uses the preprocessing stages of other, whose CoreNLP pipelines are
+	 * already loaded, instead of building new ones. Only possible before
+	 * this predictor has built its own and when both have equal options.
+	 */
+	public synchronized boolean sharePipeline(SentiSEPredictor other) {
+		if (pipeline != null || !options.equals(other.getOptions()))
+			return false;
+		InferencePipeline shared = other.getPipeline();
+		this.stopwordsHandler = other.stopwordsHandler;
+		this.normalizationStages = other.normalizationStages;
+		this.pipeline = shared;
+		return true;
+	}
+
+	/**
+	 * The preprocessing stages, built from the options the first time they
+	 * are needed after the predictor was read back.
+	 */
+	public InferencePipeline getPipeline() {
+		InferencePipeline current = pipeline;
+		if (current == null) {
+			synchronized (this) {
+				current = pipeline;
+				if (current == null) {
+					MyStopWordsHandler stopWordHandler = options.createStopWordsHandler();
+					current = new InferencePipeline(options.createPreprocessors(stopWordHandler));
+					this.stopwordsHandler = stopWordHandler;
+					this.normalizationStages = countNormalizationStages(current);
+					this.pipeline = current;
+				}
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Loads as many CoreNLP pipelines as there are threads that will score
+	 * with this predictor, so none of them waits for one on its first
+	 * request.
+	 */
+	public void preparePipelines(int threads) {
+		POSTagProcessor posTagProcessor = getPipeline().getPOSTagProcessor();
+		if (posTagProcessor != null)
+			posTagProcessor.fillPools(threads);
+	}
+
+	/**
+	 * Attaches a prediction cache, or detaches it when cache is null. The
+	 * cache is cleared if it was holding predictions of another model.
+	 */
+	public void setCache(PredictionCache cache) {
+		if (cache != null)
+			cache.bind(this);
+		this.cache = cache;
+	}
+
+	public PredictionCache getCache() {
+		return cache;
+	}
+
+	public String preprocess(String text, double[] features) {
+		return preprocessNormalized(normalize(text), features);
+	}
+
+	/**
+	 * First preprocessing step: contractions expanded and URLs removed.
+	 */
+	public String normalize(String text) {
+		return getPipeline().process(text, 0, normalizationStages);
+	}
+
+	/**
+	 * Same as {@link #normalize(String)}, with the number of characters of
+	 * URLs, code and stack traces removed written to strippedChars[0].
+	 */
+	public String normalize(String text, int[] strippedChars) {
+		InferencePipeline current = getPipeline();
+		int[] removed = new int[1];
+		strippedChars[0] = 0;
+		for (int i = 0; i < normalizationStages; i++) {
+			if (current.getStage(i) instanceof URLRemover) {
+				text = URLRemover.strip(text, removed);
+				strippedChars[0] += removed[0];
+			} else {
+				text = current.getStage(i).process(text);
+			}
+		}
+		return text;
+	}
+
+	/**
+	 * Remaining preprocessing of a text returned by {@link #normalize(String)}.
+	 * The numeric features are written to features, see
+	 * {@link #createFeatures()}.
+	 */
+	public String preprocessNormalized(String normalizedText, double[] features) {
+		InferencePipeline current = getPipeline();
+		return current.process(normalizedText, normalizationStages, current.getNumStages(), features);
+	}
+
+	/**
+	 * Cached class probabilities of a normalized text, or null when there
+	 * is no cache or the text has not been scored yet.
+	 */
+	public double[] getCachedDistribution(String normalizedText) {
+		PredictionCache current = this.cache;
+		return current == null ? null : current.get(this, TextHash.fnv64(normalizedText));
+	}
+
+	public void cacheDistribution(String normalizedText, double[] distribution) {
+		PredictionCache current = this.cache;
+		if (current != null)
+			current.put(this, TextHash.fnv64(normalizedText), distribution);
+	}
+
+	/**
+	 * Class probabilities of a raw comment, answered from the cache when
+	 * an identical normalized comment was scored before.
+	 */
+	public double[] score(String text) throws Exception {
+		String normalizedText = normalize(text);
+		double[] distribution = getCachedDistribution(normalizedText);
+		if (distribution == null) {
+			double[] features = createFeatures();
+			distribution = distribution(preprocessNormalized(normalizedText, features), features);
+			cacheDistribution(normalizedText, distribution);
+		}
+		return distribution;
+	}
+
+	/**
+	 * Class probabilities of an already preprocessed text and its numeric
+	 * features, indexed like {@link #getClassLabel(int)}.
+	 */
+	public double[] distribution(String preprocessedText, double[] features) throws Exception {
+		Instance instance = vectorize(preprocessedText, features);
+		synchronized (classifier) {
+			return classifier.distributionForInstance(instance);
+		}
+	}
+
+	public int predict(String text) throws Exception {
+		return classLabels[Utils.maxIndex(score(text))];
+	}
+
+	public int[] predict(List<String> texts) throws Exception {
+		int[] labels = new int[texts.size()];
+		for (int i = 0; i < labels.length; i++)
+			labels[i] = predict(texts.get(i));
+		return labels;
+	}
+
+	/**
+	 * Scores texts without the cache so the CoreNLP models are loaded and
+	 * the scoring code is compiled before the predictor takes real traffic.
+	 */
+	public void warmUp(String[] texts) throws Exception {
+		for (String text : texts) {
+			double[] features = createFeatures();
+			distribution(preprocess(text, features), features);
+		}
+	}
+
+	/**
+	 * Class probabilities of every text, one row per text and one column per
+	 * class (see {@link #getClassLabel(int)}). The rows are written into
+	 * buffer, which is returned so it can be passed again with the next
+	 * batch; a new buffer is only allocated when buffer is null or too
+	 * short, and a row only when it is null or of the wrong length. A cache
+	 * hit is copied straight into its row; a miss still allocates the
+	 * array the classifier returns, which the cache then keeps.
+	 */
+	public double[][] distributions(List<String> texts, double[][] buffer) throws Exception {
+		int numClasses = classLabels.length;
+		if (buffer == null || buffer.length < texts.size())
+			buffer = buffer == null ? new double[texts.size()][] : Arrays.copyOf(buffer, texts.size());
+
+		for (int i = 0; i < texts.size(); i++) {
+			if (buffer[i] == null || buffer[i].length != numClasses)
+				buffer[i] = new double[numClasses];
+			score(texts.get(i), buffer[i]);
+		}
+		return buffer;
+	}
+
+	/**
+	 * {@link #score(String)} writing into target instead of returning a
+	 * copy of the cached distribution.
+	 */
+	private void score(String text, double[] target) throws Exception {
+		String normalizedText = normalize(text);
+		PredictionCache current = this.cache;
+		long key = current == null ? 0 : TextHash.fnv64(normalizedText);
+		if (current != null && current.get(this, key, target))
+			return;
+
+		double[] features = createFeatures();
+		double[] distribution = distribution(preprocessNormalized(normalizedText, features), features);
+		System.arraycopy(distribution, 0, target, 0, target.length);
+		if (current != null)
+			current.store(this, key, distribution);
+	}
+
+	public int getClassLabel(int classIndex) {
+		return classLabels[classIndex];
+	}
+
+	public int getNumClasses() {
+		return classLabels.length;
+	}
+
+	public PreprocessingOptions getOptions() {
+		return options;
+	}
+
+	public Classifier getClassifier() {
+		return classifier;
+	}
+
+	public int getNumFeatures() {
+		return dictionary.size();
+	}
+
+}
@@ -86,6 +86,39 @@ public class WekaClassifierBuilder {
 
 	}
 
+	public static boolean storePredictor(String fileName, SentiSEPredictor predictor) {
+		try {
+			FileOutputStream fos = new FileOutputStream(fileName);
+			ObjectOutputStream oos = new ObjectOutputStream(fos);
+
+			oos.writeObject(predictor);
+			oos.close();
+
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return false;
+	}
+
+	public static SentiSEPredictor getSavedPredictor(String fileName) {
+		try {
+			FileInputStream fis = new FileInputStream(fileName);
+			ObjectInputStream ois = new ObjectInputStream(fis);
+
+			SentiSEPredictor savedPredictor = (SentiSEPredictor) ois.readObject();
+			// stdout may be carrying scores, keep it clean
+			System.err.println("Loaded model from: " + fileName);
+			ois.close();
+
+			return savedPredictor;
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return null;
+
+	}
+
 	public static Classifier getClassifierForAlgorithm(String algo) {
 		if (algo.equals("NB")) {
 			System.out.println("Algorithm: Multinomial Naive Bayes.");
@@ -44,7 +44,7 @@ public class BigramGenerator {
 	}
 
 	private HashMap<String, Integer> stringMap = new HashMap<>();
-	private ArrayList<String> stop_words;
+	private MyStopWordsHandler stopWordsHandler;
 
 	public static void main(String[] args) {
 		BigramGenerator instance = new BigramGenerator();
@@ -56,7 +56,7 @@ public class BigramGenerator {
 
 		MyStopWordsHandler handler = new MyStopWordsHandler(Configuration.STOPWORDS_FILE_NAME);
 
-		this.stop_words = handler.getStopWordList();
+		this.stopWordsHandler = handler;
 		System.out.println("Preprocessing text ..");
 		ContractionLoader contractionLoader = new ContractionLoader(Configuration.CONTRACTION_TEXT_FILE_NAME);
 		sentimentDataList = contractionLoader.apply(sentimentDataList);
@@ -133,7 +133,7 @@ public class BigramGenerator {
 			String token = st.nextToken();
 			if (prevToken != null) {
 				String key = prevToken + " " + token;
-				if (stop_words.contains(prevToken) || stop_words.contains(token)) {
+				if (stopWordsHandler.isStopword(prevToken) || stopWordsHandler.isStopword(token)) {
 					// both are stop words. choose to ignore it
 				} else {
 					if (stringMap.containsKey(key))
@@ -44,7 +44,7 @@ public class TriGramGenerator {
 	}
 
 	private HashMap<String, Integer> stringMap = new HashMap<>();
-	private ArrayList<String> stop_words;
+	private MyStopWordsHandler stopWordsHandler;
 
 	public static void main(String[] args) {
 
@@ -53,7 +53,7 @@ public class TriGramGenerator {
 	public TriGramGenerator() {
 
 		MyStopWordsHandler handler = new MyStopWordsHandler(Configuration.STOPWORDS_FILE_NAME);
-		this.stop_words = handler.getStopWordList();
+		this.stopWordsHandler = handler;
 		ArrayList<SentimentData> sentimentDataList = SentimentData.parseSentimentData(Configuration.ORACLE_FILE_NAME);
 
 		System.out.println("Preprocessing text ..");
@@ -129,8 +129,8 @@ public class TriGramGenerator {
 			String token = st.nextToken();
 			if (prevToken != null && prev_prevToken != null) {
 				String key = prev_prevToken + " " + prevToken + " " + token;
-				if (stop_words.contains(prev_prevToken) && stop_words.contains(prevToken)
-						&& stop_words.contains(token)) {
+				if (stopWordsHandler.isStopword(prev_prevToken) && stopWordsHandler.isStopword(prevToken)
+						&& stopWordsHandler.isStopword(token)) {
 					// both are stop words. choose to ignore it
 				} else {
 					if (stringMap.containsKey(key))
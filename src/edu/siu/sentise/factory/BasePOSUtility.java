@@ -18,20 +18,32 @@
 
 package edu.siu.sentise.factory;
 
-import java.util.ArrayList;
-
 import edu.siu.sentise.preprocessing.MyStopWordsHandler;
 
 abstract public class BasePOSUtility implements WordChooser{
 
-	private  ArrayList<String> stop_words;
+	private final MyStopWordsHandler stopWordsHandler;
 	
 	public BasePOSUtility(MyStopWordsHandler handler) {
-		stop_words=handler.getStopWordList();
+		stopWordsHandler=handler;
 	}
 	
 	public boolean isStopWord(String word) {
-		return stop_words.contains(word);
+		return stopWordsHandler.isStopword(word);
+	}
+
+	/**
+	 * Whether shouldInclude reads the POS tag, which needs the tagger.
+	 */
+	public boolean usesPosTags() {
+		return false;
+	}
+
+	/**
+	 * Whether shouldInclude reads the parse context, which needs the parser.
+	 */
+	public boolean usesContext() {
+		return false;
 	}
 	
 		
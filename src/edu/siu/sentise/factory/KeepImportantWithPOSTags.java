@@ -18,9 +18,6 @@
 
 package edu.siu.sentise.factory;
 
-import java.util.HashMap;
-import java.util.Hashtable;
-
 import edu.siu.sentise.preprocessing.MyStopWordsHandler;
 import edu.siu.sentise.util.Util;
 
@@ -31,10 +28,15 @@ public class KeepImportantWithPOSTags extends BasePOSUtility{
 	}
 
 	@Override
-	public void shouldInclude(String label,String word, String tag, String context, Hashtable<String, String> myMap) {
+	public void shouldInclude(int index, String word, String tag, String context, TokenBuffer output) {
 		if(Util.isEligiblePos(tag))
 			if(!this.isStopWord(word)) 
-			  myMap.put(label,tag+"_"+word);
+			  output.set(index, tag+"_"+word);
 		
 	}
+
+	@Override
+	public boolean usesPosTags() {
+		return true;
+	}
 }
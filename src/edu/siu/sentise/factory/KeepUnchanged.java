@@ -18,9 +18,6 @@
 
 package edu.siu.sentise.factory;
 
-import java.util.HashMap;
-import java.util.Hashtable;
-
 import edu.siu.sentise.preprocessing.MyStopWordsHandler;
 
 public class KeepUnchanged extends BasePOSUtility {
@@ -30,8 +27,8 @@ public class KeepUnchanged extends BasePOSUtility {
 	}
 
 	@Override
-	public void shouldInclude(String label, String word, String tag, String context, Hashtable<String, String> myMap) {
-		myMap.put(label, word);
+	public void shouldInclude(int index, String word, String tag, String context, TokenBuffer output) {
+		output.set(index, word);
 
 	}
 }
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.factory;
+
+import java.util.Arrays;
+
+/**
+ * Position indexed output of a {@link WordChooser}: slot i holds what
+ * token i of the current sentence contributes to the text, or null if it
+ * is dropped. A buffer is reset and reused for every sentence; it is not
+ * thread safe, so each thread needs its own.
+ */
+public class TokenBuffer {
+
+	private String[] tokens = new String[64];
+	private int length = 0;
+
+	/**
+	 * Empties the buffer for a sentence of the given number of tokens.
+	 */
+	public void reset(int length) {
+		if (tokens.length < length)
+			tokens = new String[Math.max(length, tokens.length * 2)];
+		else
+			Arrays.fill(tokens, 0, this.length, null);
+		this.length = length;
+	}
+
+	public void set(int index, String token) {
+		tokens[index] = token;
+	}
+
+	public String get(int index) {
+		return tokens[index];
+	}
+
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Appends the kept tokens separated by single spaces.
+	 */
+	public void appendTo(StringBuilder text) {
+		boolean first = true;
+		for (int i = 0; i < length; i++) {
+			if (tokens[i] == null)
+				continue;
+			if (!first)
+				text.append(' ');
+			text.append(tokens[i]);
+			first = false;
+		}
+	}
+
+}
@@ -18,10 +18,15 @@
 
 package edu.siu.sentise.factory;
 
-import java.util.HashMap;
-import java.util.Hashtable;
-
+/**
+ * Decides what, if anything, a token of a sentence contributes to the
+ * preprocessed text.
+ */
 public interface WordChooser {
 
-	public void shouldInclude(String label,String word, String tag, String context, Hashtable<String,String> myMap);
+	/**
+	 * Sets the text to keep for the token at index of the sentence in
+	 * output, or leaves the slot unchanged to drop the token.
+	 */
+	public void shouldInclude(int index, String word, String tag, String context, TokenBuffer output);
 }
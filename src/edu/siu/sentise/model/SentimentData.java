@@ -36,6 +36,8 @@ public class SentimentData {
 
 	private String text;
 	private int rating;
+	private double[] features; // numeric features added by preprocessing, may be null
+	private int strippedChars; // characters of URLs, code and stack traces removed
 
 	public String getText() {
 		return text;
@@ -53,6 +55,22 @@ public class SentimentData {
 		this.rating = rating;
 	}
 
+	public double[] getFeatures() {
+		return features;
+	}
+
+	public void setFeatures(double[] features) {
+		this.features = features;
+	}
+
+	public int getStrippedChars() {
+		return strippedChars;
+	}
+
+	public void setStrippedChars(int strippedChars) {
+		this.strippedChars = strippedChars;
+	}
+
 	public SentimentData(String text, int rating) {
 
 		this.text = text;
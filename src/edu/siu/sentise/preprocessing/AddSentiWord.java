@@ -19,19 +19,41 @@
 package edu.siu.sentise.preprocessing;
 
 import java.io.BufferedReader;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-
-import org.apache.log4j.chainsaw.Main;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import edu.siu.sentise.Configuration;
 import edu.siu.sentise.util.Util;
 
+/**
+ * SentiWordNet scores and swear words. The lexicons are read once, when
+ * first used, into unmodifiable collections held by nested classes, so the
+ * JVM class initialization publishes them safely to every thread.
+ */
 public class AddSentiWord {
 
-	public static HashMap<String, Double> positiveSentiMap = new HashMap<>();
-	public static HashMap<String, Double> negtiveSentiMap = new HashMap<>();
-	public static ArrayList<String> swearWordMap;
+	private static class PositiveLexicon {
+		static final Map<String, Double> MAP = Collections.unmodifiableMap(createPositiveSentiMap());
+	}
+
+	private static class NegativeLexicon {
+		static final Map<String, Double> MAP = Collections.unmodifiableMap(createNegativeSentiMap());
+	}
+
+	private static class SwearWords {
+		static final Set<String> SET = Collections.unmodifiableSet(createSwearWordMap());
+	}
+
+	/**
+	 * Reads the SentiWordNet lexicons now instead of on first lookup.
+	 */
+	public static void loadLexicons() {
+		PositiveLexicon.MAP.size();
+		NegativeLexicon.MAP.size();
+	}
 
 	/**
 	 * converts sentiword.net tags to stanfordparser tags
@@ -51,73 +73,53 @@ public class AddSentiWord {
 
 	}
 
-	public static void createPositiveSentiMap() {
-
-		BufferedReader bufferedReader = Util.getBufferedreaderByFileName(Configuration.POSITIVE_SENTI_WORD_FILE);
-		String line = null;
-		try {
-			while ((line = bufferedReader.readLine()) != null) {
-				String[] parse = line.split("#");
-				positiveSentiMap.put(parse[0] + "#" + getConvertedPOS(parse[1]), Double.parseDouble(parse[2]));
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-
-		}
+	private static HashMap<String, Double> createPositiveSentiMap() {
+		return createSentiMap(Configuration.POSITIVE_SENTI_WORD_FILE);
 	}
 
-	public static void createNegativeSentiMap() {
+	private static HashMap<String, Double> createNegativeSentiMap() {
+		return createSentiMap(Configuration.NEGATIVE_SENTI_WORD_FILE);
+	}
 
-		BufferedReader bufferedReader = Util.getBufferedreaderByFileName(Configuration.NEGATIVE_SENTI_WORD_FILE);
+	private static HashMap<String, Double> createSentiMap(String fileName) {
+		HashMap<String, Double> sentiMap = new HashMap<>();
+		BufferedReader bufferedReader = Util.getBufferedreaderByFileName(fileName);
 		String line = null;
 		try {
 			while ((line = bufferedReader.readLine()) != null) {
 				String[] parse = line.split("#");
-				negtiveSentiMap.put(parse[0] + "#" + getConvertedPOS(parse[1]), Double.parseDouble(parse[2]));
-				// System.out.println(line);
+				sentiMap.put(parse[0] + "#" + getConvertedPOS(parse[1]), Double.parseDouble(parse[2]));
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
 
 		}
-
+		return sentiMap;
 	}
 
-	public static void createSwearWordMap() {
-		swearWordMap = new ArrayList<String>();
+	private static HashSet<String> createSwearWordMap() {
+		HashSet<String> swearWords = new HashSet<String>();
 		BufferedReader bufferedReader = Util.getBufferedreaderByFileName(Configuration.SWEAR_WORD_FILE);
 		String line = null;
 		try {
 			while ((line = bufferedReader.readLine()) != null) {
 
-				swearWordMap.add(line.trim());
+				swearWords.add(line.trim());
 
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
 
 		}
-
+		return swearWords;
 	}
 
 	public static boolean isSlangWord(String word) {
-
-		if (swearWordMap == null)
-			createSwearWordMap();
-
-		// System.out.println(word);
-		if (swearWordMap.contains(word)) {
-			return true;
-		}
-
-		return false;
+		return SwearWords.SET.contains(word);
 	}
 
 	public static double getPositiveSentiScore(String word, String pos) {
-		if (positiveSentiMap.size() == 0)
-			createPositiveSentiMap();
-		Double d = positiveSentiMap.get(word + "#" + getModifiedPOS(pos));
-		// System.out.println(word+ " "+d +" "+pos + positiveSentiMap.size());
+		Double d = PositiveLexicon.MAP.get(word + "#" + getModifiedPOS(pos));
 
 		if (d == null)
 			return 0;
@@ -126,11 +128,7 @@ public class AddSentiWord {
 	}
 
 	public static double getNegativeSentiScore(String word, String pos) {
-
-		if (negtiveSentiMap.size() == 0)
-			createNegativeSentiMap();
-		Double d = negtiveSentiMap.get(word + "#" + getModifiedPOS(pos));
-		// System.out.println(word+ " "+d +" "+pos + negtiveSentiMap.size());
+		Double d = NegativeLexicon.MAP.get(word + "#" + getModifiedPOS(pos));
 		if (d == null)
 			return 0;
 
@@ -150,8 +148,7 @@ public class AddSentiWord {
 	}
 
 	public static void main(String[] args) {
-		createPositiveSentiMap();
-		createNegativeSentiMap();
+		System.out.println(PositiveLexicon.MAP.size() + " positive, " + NegativeLexicon.MAP.size() + " negative");
 
 	}
 
@@ -19,50 +19,48 @@
 package edu.siu.sentise.preprocessing;
 
 import java.io.BufferedReader;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 
 import edu.siu.sentise.Configuration;
-import edu.siu.sentise.model.SentimentData;
+import edu.siu.sentise.util.AhoCorasickReplacer;
 import edu.siu.sentise.util.Util;
 
 public class AncronymHandler implements TextPreprocessor {
 
-	private HashMap<String, String> shortWordMap = null;
-	private String fileName;
+	private final HashMap<String, String> shortWordMap;
+	private final AhoCorasickReplacer replacer;
 
 	public static void main(String[] args) {
 		new AncronymHandler(Configuration.ACRONYM_WORD_FILE);
 	}
-	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentiList) {
-		for (int i = 0; i < sentiList.size(); i++)
-			sentiList.get(i).setText(replaceShortWords((sentiList.get(i).getText())));
-		return sentiList;
+
+	public String process(String text) {
+		return replaceShortWords(text);
 	}
 
 	private String replaceShortWords(String text) {
+		return replacer.replace(text);
+	}
 
-		if (shortWordMap == null || shortWordMap.size() == 0)
-			createShortWordMap(this.fileName);
-		
-		HashSet<String> keySet = new HashSet<String>(shortWordMap.keySet());
-		for (String key : keySet) {
-			// previously used if. and replace all. problem in regex compelled to use while
-			while (text.contains(key)) {
-				text = text.replace(key, " " + shortWordMap.get(key) + " ");
-			}
-		}
-		return text;
+	/**
+	 * The phrases acronyms are expanded to.
+	 */
+	public Collection<String> getExpansions() {
+		return Collections.unmodifiableCollection(shortWordMap.values());
 	}
 
 	public AncronymHandler(String fileName) {
-		this.fileName = fileName;
-		createShortWordMap(fileName);
+		this.shortWordMap = createShortWordMap(fileName);
+		HashMap<String, String> replacements = new HashMap<String, String>();
+		for (String key : shortWordMap.keySet())
+			replacements.put(key, " " + shortWordMap.get(key) + " ");
+		this.replacer = new AhoCorasickReplacer(replacements);
 	}
 
-	private void createShortWordMap(String fileName) {
-		shortWordMap = new HashMap<>();
+	private static HashMap<String, String> createShortWordMap(String fileName) {
+		HashMap<String, String> shortWordMap = new HashMap<>();
 		BufferedReader bufferedReader = Util.getBufferedreaderByFileName(fileName);
 		String line = null;
 		try {
@@ -75,5 +73,6 @@ public class AncronymHandler implements TextPreprocessor {
 			e.printStackTrace();
 
 		}
+		return shortWordMap;
 	}
 }
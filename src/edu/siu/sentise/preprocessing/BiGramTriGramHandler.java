@@ -20,91 +20,53 @@ package edu.siu.sentise.preprocessing;
 
 import java.io.BufferedReader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.StringTokenizer;
-
-import com.mysql.jdbc.ReplicationConnectionProxy;
 
 import edu.siu.sentise.Configuration;
-import edu.siu.sentise.model.SentimentData;
+import edu.siu.sentise.util.NGramMerger;
 import edu.siu.sentise.util.Util;
 
 public class BiGramTriGramHandler implements TextPreprocessor {
 
-	private static HashMap<String,String> bigram_map= null;
-	private static HashMap<String,String> trigram_map= null;
+	// loaded once by class initialization, which also publishes it to every thread
+	private static class NGrams {
+		static final NGramMerger merger = new NGramMerger(loadPhrases());
+	}
+
 	public static void main(String[] args) {
 		System.out.println(new BiGramTriGramHandler().replacenGrams(" i would like to tell you that big fan not sure"));
 		
 	}
+
 	@Override
-	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentimentData) {
-		for (int i = 0; i < sentimentData.size(); i++)
-			sentimentData.get(i).setText(replacenGrams((sentimentData.get(i).getText())));
-		return sentimentData;
+	public String process(String text) {
+		return replacenGrams(text);
 	}
 	
 
-	private   String replacenGrams(String text) {
-
-		
-		
-		if(bigram_map == null || bigram_map.size() == 0)
-			createBiGram();
-		if(trigram_map == null || trigram_map.size() == 0)
-			createTriGram();
-		
-		for(String key : trigram_map.keySet())
-			if(text.contains(key))
-				text=text.replaceAll(key, trigram_map.get(key));
-		
-		for(String key : bigram_map.keySet())
-			if(text.contains(key))
-			{
-				
-				text=text.replaceAll(key, bigram_map.get(key));
-			}
-				
-		
-		
-		
-		//System.out.println(text);
-		return text;
-		
+	private String replacenGrams(String text) {
+		return NGrams.merger.merge(text);
 	}
-	private static void createBiGram()
-	{
-		bigram_map= new HashMap<>();
-		BufferedReader bufferedReader=Util.getBufferedreaderByFileName(Configuration.BIGRAM_FILE);
-		String line=null;
-		try
-		{
-			while((line = bufferedReader.readLine())!= null)
-			{
-				String val=" "+line.replaceAll(" ", "_")+" ";
-				bigram_map.put(line,val);				
-			}
-		}
-		catch(Exception e)
-		{
-			e.printStackTrace();
-			
-		}
+
+	/**
+	 * The phrases of the trigram and bigram lists.
+	 */
+	public static ArrayList<String> loadPhrases() {
+		ArrayList<String> phrases = new ArrayList<String>();
+		readPhrases(Configuration.TRIGRAM_FILE, phrases);
+		readPhrases(Configuration.BIGRAM_FILE, phrases);
+		return phrases;
 	}
-	private static void createTriGram()
+
+	private static void readPhrases(String fileName, ArrayList<String> phrases)
 	{
-		trigram_map= new HashMap<>();
-		BufferedReader bufferedReader=Util.getBufferedreaderByFileName(Configuration.TRIGRAM_FILE);
+		BufferedReader bufferedReader=Util.getBufferedreaderByFileName(fileName);
 		String line=null;
 		try
 		{
 			while((line = bufferedReader.readLine())!= null)
 			{
-			
-				String val=" "+line.replaceAll(" ", "_")+" ";
-				trigram_map.put(line,val);
-				//System.out.println(key+ " "+val);
+				if (!line.trim().isEmpty())
+					phrases.add(line);
 			}
 		}
 		catch(Exception e)
@@ -20,16 +20,15 @@ package edu.siu.sentise.preprocessing;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 
-import edu.siu.sentise.model.SentimentData;
+import edu.siu.sentise.util.AhoCorasickReplacer;
 import edu.siu.sentise.util.Util;
 
 public class ContractionLoader implements TextPreprocessor {
 
 	private HashMap<String, String> contractionMap = null;
+	private AhoCorasickReplacer replacer;
 
 	private void loadContractionData(String fileName) {
 		contractionMap = new HashMap<String, String>();
@@ -57,30 +56,19 @@ public class ContractionLoader implements TextPreprocessor {
 
 	public ContractionLoader(String fileName) {
 		loadContractionData(fileName);
+		replacer = new AhoCorasickReplacer(contractionMap);
 	}
 
 	public String preprocessContractions(String text) {
 		return applyContraction(text);
 	}
 
-	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentiList) {
-
-		for (int i = 0; i < sentiList.size(); i++) {
-			sentiList.get(i).setText(preprocessContractions(sentiList.get(i).getText()));
-		}
-		return sentiList;
+	public String process(String text) {
+		return preprocessContractions(text);
 	}
 
 	private String applyContraction(String text) {
-
-		HashSet<String> keySet = new HashSet<String>(contractionMap.keySet());
-		for (String key : keySet) {
-			if (text.contains(key)) {
-				text = text.replaceAll(key, contractionMap.get(key));
-			}
-		}
-		
-
-		return text;
+		// longest match first, so "can't've" is not read as "can't" + "'ve"
+		return replacer.replace(text);
 	}
 }
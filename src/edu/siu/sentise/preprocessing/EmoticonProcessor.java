@@ -20,16 +20,16 @@ package edu.siu.sentise.preprocessing;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 
-import edu.siu.sentise.model.SentimentData;
+import edu.siu.sentise.util.AhoCorasickReplacer;
 import edu.siu.sentise.util.Util;
 
 public class EmoticonProcessor implements TextPreprocessor {
 
 	private HashMap<String, String> emoticonMap = null;
+	private AhoCorasickReplacer replacer;
+	private boolean keepCase = false;
 
 	private void loadEmoticons(String fileName) {
 		emoticonMap = new HashMap<String, String>();
@@ -55,32 +55,38 @@ public class EmoticonProcessor implements TextPreprocessor {
 	}
 
 	public EmoticonProcessor(String fileName) {
+		this(fileName, false);
+	}
+
+	/**
+	 * The emoticons are matched in the lower case form of the text either
+	 * way; with keepCase the rest of the text keeps its case, so that a
+	 * later stage, such as {@link IdentifierProcessor}, can still see it.
+	 */
+	public EmoticonProcessor(String fileName, boolean keepCase) {
+		this.keepCase = keepCase;
 		loadEmoticons(fileName);
+		HashMap<String, String> replacements = new HashMap<String, String>();
+		for (String key : emoticonMap.keySet())
+			replacements.put(key, " " + emoticonMap.get(key) + " ");
+		replacer = new AhoCorasickReplacer(replacements);
 	}
 
 	public String preprocessEmoticons(String text) {
-		return replaceEmoticon(text.toLowerCase());
+		String lowerCase = text.toLowerCase();
+		// a few characters change length in lower case, match those texts as before
+		if (!keepCase || lowerCase.length() != text.length())
+			return replaceEmoticon(lowerCase, lowerCase);
+		return replaceEmoticon(text, lowerCase);
 	}
 
-	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentiList) {
-		for (int i = 0; i < sentiList.size(); i++)
-			sentiList.get(i).setText(preprocessEmoticons(sentiList.get(i).getText()));
-		return sentiList;
+	public String process(String text) {
+		return preprocessEmoticons(text);
 	}
 
-	private String replaceEmoticon(String text) {
-
-		//System.out.println(text);
-		HashSet<String> keySet = new HashSet<String>(emoticonMap.keySet());
-		for (String key : keySet) {
-			// previously used if. and replace all. problem in regex compelled to use while
-			while (text.contains(key)) {
-				text = text.replace(key, " " + emoticonMap.get(key) + " ");
-			}
-		}
-
-		//System.out.println(text);
-		return text;
+	private String replaceEmoticon(String text, String lowerCase) {
+		// ":-((" is one emoticon, not ":-(" followed by "("
+		return replacer.replace(text, lowerCase);
 	}
 
 }
@@ -18,67 +18,144 @@
 
 package edu.siu.sentise.preprocessing;
 
-import java.util.ArrayList;
-
-import edu.siu.sentise.model.SentimentData;
-
+/**
+ * Removes code identifiers from a comment in one scan over its characters.
+ * A word span is a run of letters, digits and underscores, possibly joined
+ * by dots that sit between two such characters. A span is an identifier
+ * when it has a digit or an underscore (amin_gerat23, Good1), or mixes
+ * upper and lower case after its first letter (camelCase, IFoo,
+ * HTTPConnection); a capitalized word or an all caps word stays.
+ *
+ * Dotted spans are member access only in shapes prose does not take: a
+ * call (foo.bar()), a digit or underscore in a part, or more than two
+ * parts one of which is longer than a letter (org.junit.assert). Otherwise,
+ * as in "looks good.thanks" or "e.g", the dot is a missing space and the
+ * words on both sides are judged on their own. Each identifier is replaced
+ * by a space.
+ *
+ * The case checks need the text as written, so in the pipeline the stage
+ * follows an {@link EmoticonProcessor} that keeps the case, and lower cases
+ * the text afterwards in its place.
+ */
 public class IdentifierProcessor implements TextPreprocessor {
 
-	final String camelCaseRegex = "[A-Za-z]([A-Z0-9]*[a-z][a-z0-9]*[A-Z]|[a-z0-9]*[A-Z][A-Z0-9]*[a-z])[A-Za-z0-9]*";
-	final String allCAPSRegex="([A-Z][A-Z]+)";
-
-	final String regexWordsWithNumbers = "\\w*\\d\\w*";
-	final String regexWordsWithUnderscore = "\\w*_\\w*";
 	final String replacement = " ";
+	private final boolean lowerCase;
 
-	@Override
-	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentiList) {
-		for (int i = 0; i < sentiList.size(); i++)
-
-		{
-			String origText = sentiList.get(i).getText();
-			String modifiedText = removeCameCaseWords(origText);
-			modifiedText=removeWordsWithNumbers(origText);
-			
-			sentiList.get(i).setText(modifiedText);
-		}
-		return sentiList;
+	public IdentifierProcessor() {
+		this(false);
+	}
+
+	/**
+	 * lowerCase lower cases the text once the identifiers are removed.
+	 */
+	public IdentifierProcessor(boolean lowerCase) {
+		this.lowerCase = lowerCase;
 	}
 
-	String removeCameCaseWords(String text) { 
+	@Override
+	public String process(String origText) {
+		String text = removeIdentifiers(origText);
+		return lowerCase ? text.toLowerCase() : text;
+	}
 
-		return text.replaceAll(camelCaseRegex, replacement);
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
 	}
-	
-	
-	String removeAllCAPS(String text) { //Not applied since some word can be written in all caps for emphasis
 
-		return text.replaceAll(allCAPSRegex, replacement);
+	/**
+	 * End of the word span starting at start, joining parts at dots when
+	 * joinDots is set.
+	 */
+	private static int spanEnd(String text, int start, boolean joinDots) {
+		int length = text.length();
+		int i = start;
+		while (i < length) {
+			char c = text.charAt(i);
+			if (c == '.' && joinDots && i > start && i + 1 < length && isWordChar(text.charAt(i + 1)))
+				i++;
+			else if (isWordChar(c))
+				i++;
+			else
+				break;
+		}
+		return i;
 	}
-	
-	
-	String removeWordsWithNumbers(String text) {
 
-		return text.replaceAll(regexWordsWithNumbers, replacement);
-		
+	String removeIdentifiers(String text) {
+		int length = text.length();
+		StringBuilder result = null;
+		int copied = 0;
+
+		int i = 0;
+		while (i < length) {
+			if (!isWordChar(text.charAt(i))) {
+				i++;
+				continue;
+			}
+
+			int start = i;
+			int end = spanEnd(text, start, true);
+			boolean identifier = isIdentifier(text, start, end);
+			int wordEnd = spanEnd(text, start, false);
+			if (!identifier && wordEnd < end) {
+				// not member access, so the dot ends a sentence: judge the first word alone
+				end = wordEnd;
+				identifier = isIdentifier(text, start, end);
+			}
+			i = end;
+
+			if (identifier) {
+				if (result == null)
+					result = new StringBuilder(length);
+				result.append(text, copied, start).append(replacement);
+				copied = end;
+			}
+		}
+
+		if (result == null)
+			return text;
+		result.append(text, copied, length);
+		return result.toString();
 	}
-	
-	String removeWordsWithUnderscores(String text) {
 
-		return text.replaceAll(regexWordsWithUnderscore, replacement);
-		
+	private static boolean isIdentifier(String text, int start, int end) {
+		boolean digitOrUnderscore = false;
+		boolean lower = false; // lower and upper case letters after the first character
+		boolean upper = false;
+		int parts = 1;
+		int partLength = 0;
+		boolean longPart = false;
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			if (c == '.') {
+				parts++;
+				partLength = 0;
+				continue;
+			}
+			if (Character.isDigit(c) || c == '_')
+				digitOrUnderscore = true;
+			else if (i > start && Character.isLowerCase(c))
+				lower = true;
+			else if (i > start && Character.isUpperCase(c))
+				upper = true;
+			if (++partLength > 1)
+				longPart = true;
+		}
+
+		if (digitOrUnderscore || (lower && upper))
+			return true;
+		if (parts == 1)
+			return false;
+		boolean call = end < text.length() && text.charAt(end) == '(';
+		return call || (parts > 2 && longPart);
 	}
 
 	public static void main(String[] args) {
 
-		String test = "camelCase this well amin_gerat23 nice_try History2Lession IFoo HTTPConnection Good1 good1 this.ElectionModel bad Touch leaF CORRECT GOT_IT";
+		String test = "camelCase this well amin_gerat23 nice_try History2Lession IFoo HTTPConnection Good1 good1 this.ElectionModel bad Touch leaF CORRECT GOT_IT e.g. end. looks good.thanks foo.bar() org.junit.assert";
 		IdentifierProcessor p = new IdentifierProcessor();
-		String modText=p.removeCameCaseWords(test);
-		modText=p.removeWordsWithNumbers(modText);	
-		modText=p.removeWordsWithUnderscores(modText);
-		//modText=p.removeAllCAPS(modText);
-
-		System.out.println(modText);
+		System.out.println(p.process(test));
 
 	}
 
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.preprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import edu.siu.sentise.model.SentimentData;
+
+/**
+ * Immutable chain of the preprocessing stages used for training, applied to
+ * a single comment at a time, or fused over a training set with
+ * {@link #apply(ArrayList, int)}.
+ */
+public class InferencePipeline {
+
+	private final TextPreprocessor[] stages;
+
+	public InferencePipeline(List<TextPreprocessor> stages) {
+		this.stages = stages.toArray(new TextPreprocessor[stages.size()]);
+	}
+
+	public String process(String text) {
+		for (TextPreprocessor stage : stages)
+			text = stage.process(text);
+		return text;
+	}
+
+	/**
+	 * Runs every stage on one comment, in place.
+	 */
+	public void processData(SentimentData data) {
+		for (TextPreprocessor stage : stages)
+			stage.processData(data);
+	}
+
+	/**
+	 * Runs the whole chain on one comment before starting the next, instead
+	 * of each stage on the whole list, spreading the comments over up to
+	 * threads threads. Comments are updated in place and keep their order,
+	 * and the result does not depend on the number of threads.
+	 */
+	public ArrayList<SentimentData> apply(final ArrayList<SentimentData> sentimentData, int threads) {
+		final int length = sentimentData.size();
+		final AtomicInteger done = new AtomicInteger();
+		final Consumer<SentimentData> chain = new Consumer<SentimentData>() {
+			public void accept(SentimentData data) {
+				processData(data);
+				int processed = done.incrementAndGet();
+				if ((processed % 100) == 0)
+					System.out.println("Preprocessed " + processed + " of " + length);
+			}
+		};
+
+		POSTagProcessor posTagProcessor = getPOSTagProcessor();
+		long fallbacksBefore = posTagProcessor == null ? 0 : posTagProcessor.getFallbackCount();
+		try {
+			if (threads <= 1 || length <= 1) {
+				sentimentData.stream().forEach(chain);
+			} else {
+				// a parallel stream started from a pool task runs in that pool
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				try {
+					pool.submit(new Runnable() {
+						public void run() {
+							sentimentData.parallelStream().forEach(chain);
+						}
+					}).get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while preprocessing", e);
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Preprocessing failed", e.getCause());
+				} finally {
+					pool.shutdownNow();
+				}
+			}
+		} finally {
+			if (posTagProcessor != null)
+				posTagProcessor.endBatch(length, fallbacksBefore);
+		}
+
+		// the report URLRemover.apply prints, which the fused chain bypasses
+		long stripped = 0;
+		for (SentimentData data : sentimentData)
+			stripped += data.getStrippedChars();
+		if (stripped > 0)
+			System.out.println("Stripped " + stripped + " characters of URLs, code and stack traces from " + length
+					+ " comments");
+		return sentimentData;
+	}
+
+	/**
+	 * Same as {@link #process(String)}, additionally adding the time spent in
+	 * each stage to stageNanos, indexed like {@link #getStageName(int)}.
+	 */
+	public String process(String text, long[] stageNanos) {
+		for (int i = 0; i < stages.length; i++) {
+			long start = System.nanoTime();
+			text = stages[i].process(text);
+			stageNanos[i] += System.nanoTime() - start;
+		}
+		return text;
+	}
+
+	/**
+	 * Applies only the stages fromStage (inclusive) to toStage (exclusive),
+	 * so a comment can be processed in two steps.
+	 */
+	public String process(String text, int fromStage, int toStage) {
+		return process(text, fromStage, toStage, null);
+	}
+
+	/**
+	 * Same as {@link #process(String, int, int)}, with the numeric features
+	 * of the POS tag stage written to features, indexed like
+	 * {@link #getFeatureNames()}.
+	 */
+	public String process(String text, int fromStage, int toStage, double[] features) {
+		for (int i = fromStage; i < toStage; i++) {
+			if (stages[i] instanceof POSTagProcessor)
+				text = ((POSTagProcessor) stages[i]).process(text, features);
+			else
+				text = stages[i].process(text);
+		}
+		return text;
+	}
+
+	/**
+	 * Names of the numeric features produced next to the text, empty when
+	 * the configuration has none.
+	 */
+	public String[] getFeatureNames() {
+		POSTagProcessor posTagProcessor = getPOSTagProcessor();
+		return posTagProcessor == null ? new String[0] : posTagProcessor.getFeatureNames();
+	}
+
+	public POSTagProcessor getPOSTagProcessor() {
+		for (TextPreprocessor stage : stages)
+			if (stage instanceof POSTagProcessor)
+				return (POSTagProcessor) stage;
+		return null;
+	}
+
+	public TextPreprocessor getStage(int index) {
+		return stages[index];
+	}
+
+	public int getNumStages() {
+		return stages.length;
+	}
+
+	public String getStageName(int index) {
+		return stages[index].getClass().getSimpleName();
+	}
+
+}
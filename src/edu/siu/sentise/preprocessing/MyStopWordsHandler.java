@@ -20,43 +20,59 @@ package edu.siu.sentise.preprocessing;
 
 import java.io.BufferedReader;
 import java.util.ArrayList;
+import java.util.List;
 
+import edu.siu.sentise.util.StringSet;
 import edu.siu.sentise.util.Util;
 import weka.core.stopwords.StopwordsHandler;
 
+/**
+ * Stop words read once from one or more word lists. Each handler owns its
+ * own immutable set, so handlers with different lists do not affect each
+ * other and one handler can be shared between threads.
+ */
 public class MyStopWordsHandler implements StopwordsHandler {
-	public static ArrayList<String> stopWordsList;
+	private final StringSet stopWords;
 
 	public MyStopWordsHandler(String stopwordFile) {
+		this(new String[] { stopwordFile });
+	}
 
-		stopWordsList = new ArrayList<String>(200);
-		loadStopwordsFromFile(stopwordFile);
+	protected MyStopWordsHandler(String[] files) {
+		ArrayList<String> words = new ArrayList<String>(200);
+		for (String file : files)
+			loadStopwordsFromFile(file, words);
+		stopWords = new StringSet(words);
 	}
 
-	public void loadStopwordsFromFile(String file) {
+	private static void loadStopwordsFromFile(String file, ArrayList<String> words) {
 
 		BufferedReader bufferedReader = Util.getBufferedreaderByFileName(file);
 		String line = null;
 		try {
-			ArrayList<String> words = new ArrayList<String>();
 			while ((line = bufferedReader.readLine()) != null) {
-				stopWordsList.add(line.trim());
+				line = line.trim();
+				if (!line.isEmpty())
+					words.add(line);
 			}
 
 			bufferedReader.close();
 		} catch (Exception e) {
-
+			e.printStackTrace();
 		}
 	}
 
-	public ArrayList<String> getStopWordList() {
+	/**
+	 * The stop words, read only, in the order of the files.
+	 */
+	public List<String> getStopWordList() {
 
-		return this.stopWordsList;
+		return stopWords.toList();
 	}
 
 	@Override
 	public boolean isStopword(String word) {
-		return stopWordsList.contains(word);
+		return stopWords.contains(word);
 
 	}
 
@@ -20,55 +20,296 @@ package edu.siu.sentise.preprocessing;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Hashtable;
 import java.util.List;
 import java.util.Properties;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import edu.siu.sentise.factory.BasePOSUtility;
+import edu.siu.sentise.factory.TokenBuffer;
 import edu.siu.sentise.model.SentimentData;
 import edu.siu.sentise.util.DataLists;
+import edu.siu.sentise.util.ResourcePool;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.trees.Tree;
 import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
 import edu.stanford.nlp.util.CoreMap;
 
+/**
+ * Safe to share between threads: every document is annotated with a
+ * pipeline borrowed from a bounded pool, sized to the number of workers
+ * (see {@link #setMaxPipelines(int)} for the memory this costs), and
+ * everything else is read only once constructed.
+ *
+ * With {@link #setFastPath(boolean)}, trivial comments (at most three
+ * words, only emoticons and punctuation, or a single known acronym) skip
+ * CoreNLP and are tagged by the shared MaxentTagger, see
+ * {@link #getFastPathSentences(String)}. The setting is saved with the model,
+ * so training and scoring see the same features for such comments.
+ *
+ * With a sentence length cap or a time budget per document the parse tree
+ * is built one sentence at a time after tagging; sentences over the cap
+ * or past the budget keep just their POS tags, see
+ * {@link #getFallbackCount()}.
+ *
+ * Sentiment and slang word counts are not added to the text; they are
+ * written to a numeric feature array, see {@link #getFeatureNames()}.
+ */
 public class POSTagProcessor implements TextPreprocessor {
 
-	private HashSet<String> negation_words = new HashSet<String>(Arrays.asList(DataLists.negation_words));
-	private HashSet<String> emoticon_words = new HashSet<String>(Arrays.asList(DataLists.emoticon_words));
-
-	private StanfordCoreNLP pipeline = null;
-	private BasePOSUtility basePOSUtility;
-	private boolean handleNegation = true;
-	private double POSITIVE_THRESHOLD = 0.5;
-	private double NEGATIVE_THRESHOLD = -0.75;
-	private static boolean markSlangWords;
+	/** Negation scope from the constituency parse (PCFG). */
+	public static final String NEGATION_TREE = "tree";
+	/** Negation scope from the dependency parse, far cheaper than the PCFG. */
+	public static final String NEGATION_DEP = "dep";
+	/** Negation scope up to the end of the clause, POS tags only. */
+	public static final String NEGATION_POS = "pos";
+
+	private final HashSet<String> negation_words = new HashSet<String>(Arrays.asList(DataLists.negation_words));
+	private final HashSet<String> emoticon_words = new HashSet<String>(Arrays.asList(DataLists.emoticon_words));
+
+	private volatile ResourcePool<StanfordCoreNLP> pipelines;
+	private volatile ResourcePool<StanfordCoreNLP> parsers; // parse step of a limited pipeline, null otherwise
+	private final int maxSentenceTokens; // 0 for no limit
+	private final long maxParseMillis; // per document, 0 for no limit
+	private final AtomicLong fallbackCount = new AtomicLong();
+	private final BasePOSUtility basePOSUtility;
+	private final boolean handleNegation;
+	private final String negationMode;
+	private static final double POSITIVE_THRESHOLD = 0.5;
+	private static final double NEGATIVE_THRESHOLD = -0.75;
+	private final boolean markSlangWords;
+
+	// '#' is a word delimiter, so these never clash with a word attribute
+	public static final String FEATURE_EXTREME_NEGATIVE = "#extremenegative";
+	public static final String FEATURE_EXTREME_POSITIVE = "#extremepositive";
+	public static final String FEATURE_NEGATIVE = "#negative";
+	public static final String FEATURE_POSITIVE = "#positive";
+	public static final String FEATURE_SLANG = "#slangwords";
+
+	private static final int FAST_PATH_MAX_WORDS = 3;
+	private volatile Set<String> fastPathPhrases = Collections.emptySet();
+	private final AtomicLong fastPathCount = new AtomicLong();
+	private final AtomicReference<FutureTask<StanfordCoreNLP>> preloadedPipeline = new AtomicReference<FutureTask<StanfordCoreNLP>>();
 
 	public POSTagProcessor(BasePOSUtility bUtility, boolean shouldNegate, int addSentiScore, boolean markSlangWords) {
+		this(bUtility, shouldNegate, NEGATION_TREE, addSentiScore, markSlangWords);
+	}
+
+	public POSTagProcessor(BasePOSUtility bUtility, boolean shouldNegate, String negationMode, int addSentiScore,
+			boolean markSlangWords) {
+		this(bUtility, shouldNegate, negationMode, addSentiScore, markSlangWords, 0, 0);
+	}
+
+	/**
+	 * maxSentenceTokens and maxParseMillis bound the constituency parse: a
+	 * longer sentence, or one reached after maxParseMillis of parsing the
+	 * document, is not parsed. Zero means no limit.
+	 */
+	public POSTagProcessor(BasePOSUtility bUtility, boolean shouldNegate, String negationMode, int addSentiScore,
+			boolean markSlangWords, int maxSentenceTokens, long maxParseMillis) {
+		if (!negationMode.equals(NEGATION_TREE) && !negationMode.equals(NEGATION_DEP)
+				&& !negationMode.equals(NEGATION_POS))
+			throw new IllegalArgumentException("Unknown negation mode: " + negationMode);
 
 		handleNegation = shouldNegate;
+		this.negationMode = negationMode;
 		basePOSUtility = bUtility;
 		addSentiScoreType = addSentiScore;
 		this.markSlangWords = markSlangWords;
+		this.maxSentenceTokens = maxSentenceTokens;
+		this.maxParseMillis = maxParseMillis;
+		// one pipeline per worker, see setNumWorkers and fillPools to allow more
+		this.pipelines = createPipelinePool(numWorkers);
+		if (isParseLimited())
+			this.parsers = createParserPool(numWorkers);
+
+		// the models take seconds to load, start on them while the caller
+		// loads its dictionaries
+		FutureTask<StanfordCoreNLP> task = new FutureTask<StanfordCoreNLP>(new Callable<StanfordCoreNLP>() {
+			public StanfordCoreNLP call() {
+				if (addSentiScoreType > 0)
+					AddSentiWord.loadLexicons();
+				ResourcePool<StanfordCoreNLP> parserPool = parsers;
+				if (parserPool != null)
+					parserPool.release(parserPool.borrow());
+				return getCoreNLP();
+			}
+		});
+		preloadedPipeline.set(task);
+		Thread loader = new Thread(task, "sentise-corenlp-loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	/**
+	 * Upper bound on the CoreNLP pipelines kept for concurrent callers, one
+	 * by default; callers beyond it wait for a free pipeline. Each pipeline
+	 * holds its own copy of the models: the POS tagger and, when the
+	 * features need them, the PCFG parser or the dependency parser, which
+	 * take hundreds of megabytes of heap each. A limited parse keeps a pool
+	 * of parsers of the same size next to it. Meant to be set before the
+	 * processor is used.
+	 */
+	public void setMaxPipelines(int maxPipelines) {
+		this.pipelines = createPipelinePool(maxPipelines);
+		if (isParseLimited())
+			this.parsers = createParserPool(maxPipelines);
+	}
+
+	/**
+	 * Parse results are read from and added to cache; {@link #apply(ArrayList)}
+	 * writes the new ones to disk when it is done.
+	 */
+	public void setParseCache(ParseCache cache) {
+		this.parseCache = cache;
+	}
+
+	/**
+	 * Tags with the shared tagger of model (see {@link POSTagger}) instead
+	 * of a CoreNLP pipeline when the configuration needs POS tags but no
+	 * parse. Meant to be set before the processor is used.
+	 */
+	public void setTaggerModel(String model) {
+		this.taggerModel = model;
+		this.tagger = null;
+		if (isTaggerOnly()) {
+			// the pipeline being preloaded will not be used
+			FutureTask<StanfordCoreNLP> preloaded = preloadedPipeline.getAndSet(null);
+			if (preloaded != null)
+				preloaded.cancel(true);
+		}
+	}
+
+	private boolean isTaggerOnly() {
+		return taggerModel != null && getAnnotators().equals("tokenize, ssplit, pos");
 	}
 
-	private int addSentiScoreType = 0;
+	private POSTagger getTagger() {
+		POSTagger current = tagger;
+		if (current == null) {
+			// loads the model only once, however many threads get here
+			current = new POSTagger(taggerModel);
+			tagger = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Number of threads {@link #apply(ArrayList)} annotates with. The
+	 * pipeline pool grows to match when needed. Each document is processed
+	 * exactly as by {@link #process(String)}, so the result does not depend
+	 * on the number of workers.
+	 */
+	public void setNumWorkers(int numWorkers) {
+		if (numWorkers < 1)
+			throw new IllegalArgumentException("Number of workers must be positive: " + numWorkers);
+		this.numWorkers = numWorkers;
+		if (pipelines.getMaxSize() < numWorkers)
+			setMaxPipelines(numWorkers);
+	}
+
+	/**
+	 * The parser alone, run on sentences that are already tagged. CoreNLP
+	 * gives up on a sentence after maxParseMillis as well, so one sentence
+	 * cannot overrun the budget of its document by much.
+	 */
+	private StanfordCoreNLP createParser() {
+		Properties props = new Properties();
+		props.setProperty("annotators", "parse");
+		if (maxParseMillis > 0)
+			props.setProperty("parse.maxtime", Long.toString(maxParseMillis));
+		return new StanfordCoreNLP(props, false);
+	}
 
-	public void setHandleSentiScore(int hSentiScore) {
-		addSentiScoreType = hSentiScore;
+	private ResourcePool<StanfordCoreNLP> createParserPool(int maxParsers) {
+		return new ResourcePool<StanfordCoreNLP>(maxParsers) {
+			protected StanfordCoreNLP create() {
+				return createParser();
+			}
+		};
 	}
 
+	private ResourcePool<StanfordCoreNLP> createPipelinePool(int maxPipelines) {
+		return new ResourcePool<StanfordCoreNLP>(maxPipelines) {
+			protected StanfordCoreNLP create() {
+				FutureTask<StanfordCoreNLP> preloaded = preloadedPipeline.getAndSet(null);
+				if (preloaded == null)
+					return getCoreNLP();
+				try {
+					return preloaded.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Interrupted while loading CoreNLP", e);
+				} catch (ExecutionException e) {
+					throw new IllegalStateException("Unable to load CoreNLP", e.getCause());
+				}
+			}
+		};
+	}
+
+	private final int addSentiScoreType;
+	private volatile int numWorkers = 1;
+	private volatile ParseCache parseCache;
+	private volatile String taggerModel; // tags without a CoreNLP pipeline when no parse is needed
+	private volatile POSTagger tagger;
+	private volatile boolean fastPath = false;
+	// the word choosers write into a buffer reused across sentences, one per thread
+	private final ThreadLocal<TokenBuffer> tokenBuffers = new ThreadLocal<TokenBuffer>() {
+		protected TokenBuffer initialValue() {
+			return new TokenBuffer();
+		}
+	};
+
 	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentimentData) {
 
+		long fallbacksBefore = fallbackCount.get();
+		try {
+			if (numWorkers > 1 && sentimentData.size() > 1)
+				return applyParallel(sentimentData, numWorkers);
+			return applySequential(sentimentData);
+		} finally {
+			endBatch(sentimentData.size(), fallbacksBefore);
+		}
+	}
+
+	/**
+	 * Writes new parse results to disk and reports the comments of the batch
+	 * that hit the parse limits, fallbacksBefore being
+	 * {@link #getFallbackCount()} at its start.
+	 */
+	void endBatch(int documents, long fallbacksBefore) {
+		if (parseCache != null)
+			parseCache.flush();
+		if (isParseLimited())
+			System.out.println("Parse limits: " + (fallbackCount.get() - fallbacksBefore) + " of " + documents
+					+ " comments were not fully parsed");
+	}
+
+	private ArrayList<SentimentData> applySequential(ArrayList<SentimentData> sentimentData) {
+
 		int length = sentimentData.size();
 		for (int i = 0; i < length; i++) {
 
 			// System.out.println(sentimentData.get(i).getText());
-			sentimentData.get(i).setText(preprocessPOStags(sentimentData.get(i).getText()));
+			processData(sentimentData.get(i));
 			// System.out.println(sentimentData.get(i).getText());
 			if ((i % 100) == 0) {
 				System.out.println("POS tag processsed processed:" + i + " of " + length);
@@ -78,168 +319,588 @@ public class POSTagProcessor implements TextPreprocessor {
 		return sentimentData;
 	}
 
+	/**
+	 * Workers take the next document index from a shared counter and write
+	 * the result back to the same document, so the list keeps its order.
+	 */
+	private ArrayList<SentimentData> applyParallel(final ArrayList<SentimentData> sentimentData, int workers) {
+		final int length = sentimentData.size();
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger done = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		ArrayList<Future<?>> futures = new ArrayList<Future<?>>(workers);
+		for (int w = 0; w < workers; w++) {
+			futures.add(executor.submit(new Runnable() {
+				public void run() {
+					int i;
+					while ((i = next.getAndIncrement()) < length) {
+						processData(sentimentData.get(i));
+						int processed = done.incrementAndGet();
+						if ((processed % 100) == 0)
+							System.out.println("POS tag processsed processed:" + processed + " of " + length);
+					}
+				}
+			}));
+		}
+		executor.shutdown();
+
+		try {
+			for (Future<?> future : futures)
+				future.get();
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while annotating", e);
+		} catch (ExecutionException e) {
+			executor.shutdownNow();
+			throw new IllegalStateException("Annotation failed", e.getCause());
+		}
+
+		return sentimentData;
+	}
+
+	@Override
+	public void processData(SentimentData data) {
+		double[] features = new double[getNumFeatures()];
+		data.setText(process(data.getText(), features));
+		data.setFeatures(features);
+	}
+
+	public String process(String text) {
+		return process(text, null);
+	}
+
+	/**
+	 * Processes text and writes its sentiment and slang word counts to
+	 * features, in the order of {@link #getFeatureNames()}. features may be
+	 * null when the counts are not needed.
+	 */
+	public String process(String text, double[] features) {
+		return preprocessPOStags(text, features);
+	}
+
+	/**
+	 * Names of the numeric features {@link #process(String, double[])}
+	 * writes, which depend on the sentiment word and slang options.
+	 */
+	public String[] getFeatureNames() {
+		ArrayList<String> names = new ArrayList<String>();
+		if (addSentiScoreType == 4) {
+			names.add(FEATURE_EXTREME_NEGATIVE);
+			names.add(FEATURE_EXTREME_POSITIVE);
+		}
+		if (addSentiScoreType > 0) {
+			names.add(FEATURE_NEGATIVE);
+			names.add(FEATURE_POSITIVE);
+		}
+		if (markSlangWords)
+			names.add(FEATURE_SLANG);
+		return names.toArray(new String[names.size()]);
+	}
+
+	public int getNumFeatures() {
+		return getNumFeatures(addSentiScoreType, markSlangWords);
+	}
+
+	/**
+	 * Length of {@link #getFeatureNames()} for the given options, known
+	 * without building a processor.
+	 */
+	public static int getNumFeatures(int addSentiScoreType, boolean markSlangWords) {
+		return (addSentiScoreType == 4 ? 2 : 0) + (addSentiScoreType > 0 ? 2 : 0) + (markSlangWords ? 1 : 0);
+	}
+
+	/**
+	 * Number of documents with at least one sentence that was not parsed
+	 * because of the length cap or the time budget.
+	 */
+	public long getFallbackCount() {
+		return fallbackCount.get();
+	}
+
+	private boolean isParseLimited() {
+		return (maxSentenceTokens > 0 || maxParseMillis > 0) && getAnnotators().endsWith(", parse");
+	}
+
 	public void initCoreNLP() {
-		if (pipeline == null)
-			pipeline = getCoreNLP();
+		if (isTaggerOnly()) {
+			getTagger();
+			return;
+		}
+		ResourcePool<StanfordCoreNLP> pool = this.pipelines;
+		pool.release(pool.borrow());
+	}
+
+	/**
+	 * Loads count pipelines (and parsers) at once, growing the pools to
+	 * count, so that as many concurrent callers do not each build their own
+	 * on a live request.
+	 */
+	public void fillPools(int count) {
+		if (isTaggerOnly()) {
+			getTagger();
+			return;
+		}
+		if (pipelines.getMaxSize() < count)
+			setMaxPipelines(count);
+
+		final ResourcePool<StanfordCoreNLP> pipelinePool = this.pipelines;
+		final ResourcePool<StanfordCoreNLP> parserPool = this.parsers;
+		ExecutorService executor = Executors.newFixedThreadPool(count);
+		try {
+			// every task holds its pipeline until all are loaded, otherwise
+			// the pool would hand the first one out again
+			final CountDownLatch loaded = new CountDownLatch(count);
+			ArrayList<Future<?>> tasks = new ArrayList<Future<?>>();
+			for (int i = 0; i < count; i++) {
+				tasks.add(executor.submit(new Callable<Void>() {
+					public Void call() throws InterruptedException {
+						StanfordCoreNLP pipeline = null;
+						StanfordCoreNLP parser = null;
+						try {
+							pipeline = pipelinePool.borrow();
+							if (parserPool != null)
+								parser = parserPool.borrow();
+						} finally {
+							loaded.countDown();
+						}
+						try {
+							loaded.await();
+						} finally {
+							if (pipeline != null)
+								pipelinePool.release(pipeline);
+							if (parser != null)
+								parserPool.release(parser);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<?> task : tasks)
+				task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading CoreNLP", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Unable to load CoreNLP", e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Only what the configured features read: the parse tree for negation
+	 * scopes and context tags, POS tags for tags, POS filtering and
+	 * sentiment word lookup. Lemmas and named entities are never used.
+	 */
+	public String getAnnotators() {
+		// the context tags need the constituency tree, which then also gives the negation scopes
+		boolean needsParse = (handleNegation && negationMode.equals(NEGATION_TREE)) || basePOSUtility.usesContext();
+		boolean needsDependencies = handleNegation && negationMode.equals(NEGATION_DEP);
+		boolean needsPos = needsParse || handleNegation || addSentiScoreType > 0 || basePOSUtility.usesPosTags();
+		if (needsParse)
+			return "tokenize, ssplit, pos, parse";
+		if (needsDependencies)
+			return "tokenize, ssplit, pos, depparse";
+		if (needsPos)
+			return "tokenize, ssplit, pos";
+		return "tokenize, ssplit";
+	}
+
+	public String getNegationMode() {
+		return negationMode;
 	}
 
 	public StanfordCoreNLP getCoreNLP() {
 		Properties props = new Properties();
-		props.setProperty("annotators", "tokenize, ssplit, pos, lemma, ner, parse");
+		// a limited pipeline parses in a second step, see createParser()
+		String annotators = isParseLimited() ? "tokenize, ssplit, pos" : getAnnotators();
+		props.setProperty("annotators", annotators);
 		StanfordCoreNLP pipeline = new StanfordCoreNLP(props);
 		// System.out.println("returning core nlp.");
 		return pipeline;
 	}
 
+	/**
+	 * Phrases, such as acronym expansions, that take the fast path whatever
+	 * their length.
+	 */
+	public void setFastPathPhrases(Collection<String> phrases) {
+		HashSet<String> normalized = new HashSet<String>();
+		for (String phrase : phrases)
+			normalized.add(joinWords(phrase.toLowerCase().trim().split("\\s+")));
+		this.fastPathPhrases = Collections.unmodifiableSet(normalized);
+	}
+
+	/**
+	 * Lets trivial comments skip CoreNLP, see {@link #getFastPathSentences(String)}.
+	 * Ignored for configurations that read context tags, which come from the
+	 * parse tree. Off by default; meant to be set before the processor is
+	 * used.
+	 */
+	public void setFastPath(boolean fastPath) {
+		this.fastPath = fastPath;
+	}
+
+	/**
+	 * Number of comments processed without CoreNLP so far.
+	 */
+	public long getFastPathCount() {
+		return fastPathCount.get();
+	}
+
 	public String preprocessPOStags(String text) {
+		return preprocessPOStags(text, null);
+	}
+
+	public String preprocessPOStags(String text, double[] features) {
+
+		List<List<HasWord>> sentences = fastPath && !basePOSUtility.usesContext() ? getFastPathSentences(text) : null;
+		if (sentences != null) {
+			fastPathCount.incrementAndGet();
+			return getFastPathText(sentences, features);
+		}
 
-		initCoreNLP();
 		// if (isNegationAvailable(text)) {
 
-		return getPosProccesedText(text);
+		return getPosProccesedText(text, features);
 
 		// }
 		// return text;
 	}
 
 	public String getPosProccesedText(String text) {
-		String newText = "";
-		int countPositive = 0;
-		int countNegative = 0;
-		int countExtremeNegative = 0;
-		int countExtremePositive = 0;
-		int countSwearWord = 0;
-
-		Annotation annotation = new Annotation(text);
-		pipeline.annotate(annotation);
-		List<CoreMap> sentences = annotation.get(SentencesAnnotation.class);
-		for (CoreMap sentence : sentences) {
-			Tree tree = sentence.get(TreeAnnotation.class);
-
-			List<Tree> leaves = new ArrayList<>();
-			leaves = tree.getLeaves(leaves);
-			Hashtable<String, String> hashTable = new Hashtable<>();
-			for (Tree leaf : leaves) {
-				String word = leaf.toString().toLowerCase();
-				String pos_arr[] = leaf.parent(tree).toString().replace(")", "").replace("(", "").split(" ");
-				String pos = "";
-				if (pos_arr.length == 2) {
-					pos = pos_arr[0];
+		return getPosProccesedText(text, null);
+	}
 
-				}
-				Tree parentNode = null;
+	public String getPosProccesedText(String text, double[] features) {
+		StringBuilder newText = new StringBuilder();
+		SentimentCounts counts = new SentimentCounts();
 
-				if (!isAleadyChanged(leaf, hashTable)) {
+		int levels = getParseLevels();
+		List<ParseCache.Sentence> sentences = annotate(text);
+		for (ParseCache.Sentence sentence : sentences) {
+			appendSentence(createView(sentence, levels), counts, newText);
 
-					String context = leaf.parent(tree).parent(tree).value();
-					double wordPosScore = AddSentiWord.getPositiveSentiScore(word, pos);
+			// System.out.println(positiveSentiScore+" "+negativeSentiScore);
+		}
+		counts.copyTo(features);
 
-					if (wordPosScore != 0 && this.addSentiScoreType > 0) {
-						if (this.addSentiScoreType == 4 && wordPosScore > POSITIVE_THRESHOLD)
-							countExtremePositive++;
-						else
-							countPositive++;
+		return newText.toString();
+	}
 
-					}
+	/**
+	 * The view of sentence for a configuration reading the given parse
+	 * levels. A cached entry may hold more levels than that, such as the
+	 * dependencies of a sentence whose tree was skipped, but only the
+	 * configured one is used: a sentence without it falls back to its tags.
+	 */
+	private static SentenceView createView(ParseCache.Sentence sentence, int levels) {
+		if (levels == ParseCache.TREE)
+			return sentence.getTree() != null ? SentenceView.fromTree(sentence.getTree())
+					: SentenceView.fromTokens(sentence.getTokens());
+		if (levels == ParseCache.DEPENDENCIES)
+			return sentence.getHeads() != null
+					? SentenceView.fromDependencies(sentence.getTokens(), sentence.getHeads())
+					: SentenceView.fromTokens(sentence.getTokens());
+		return SentenceView.fromTokens(sentence.getTokens());
+	}
 
-					double wordNegScore = AddSentiWord.getNegativeSentiScore(word, pos);
+	/**
+	 * The parsed sentences of text, from the parse cache when one is set
+	 * and it has seen the text before.
+	 */
+	private List<ParseCache.Sentence> annotate(String text) {
+		ParseCache cache = this.parseCache;
+		int levels = getParseLevels();
+		long key = 0;
+		ParseCache.Entry cached = null;
+		if (cache != null) {
+			key = ParseCache.getKey(getCacheSource(), text);
+			cached = cache.get(key);
+			// the time budget changes the result only in rare cases, the length cap is checked
+			if (cached != null && cached.covers(levels, maxSentenceTokens))
+				return cached.getSentences();
+		}
 
-					if (wordNegScore != 0 && this.addSentiScoreType > 0) {
-						if (this.addSentiScoreType == 4 && wordNegScore > NEGATIVE_THRESHOLD)
-							countExtremeNegative++;
-						else
-							countNegative++;
+		if (isTaggerOnly()) {
+			List<List<CoreLabel>> tagged = getTagger().tagText(text);
+			ArrayList<ParseCache.Sentence> parsed = new ArrayList<ParseCache.Sentence>(tagged.size());
+			for (List<CoreLabel> tokens : tagged)
+				parsed.add(new ParseCache.Sentence(null, tokens));
+			if (cache != null)
+				cache.put(key, ParseCache.merge(cached, parsed, levels, maxSentenceTokens));
+			return parsed;
+		}
 
-					}
-					if (this.markSlangWords && AddSentiWord.isSlangWord(word))
-						countSwearWord++;
+		Annotation annotation = new Annotation(text);
+		ResourcePool<StanfordCoreNLP> pool = this.pipelines;
+		StanfordCoreNLP pipeline = pool.borrow();
+		try {
+			pipeline.annotate(annotation);
+		} finally {
+			pool.release(pipeline);
+		}
 
-					if (!isPunctuation(word))
-						basePOSUtility.shouldInclude(leaf.label().toString(), word, pos, context, hashTable);
-					else
-						hashTable.put(leaf.label().toString(), word);
-				}
+		List<CoreMap> sentences = annotation.get(SentencesAnnotation.class);
+		ArrayList<ParseCache.Sentence> parsed = new ArrayList<ParseCache.Sentence>(sentences.size());
+		boolean timedOut = false;
+		if (isParseLimited()) {
+			timedOut = parseWithinLimits(sentences, parsed);
+		} else {
+			for (CoreMap sentence : sentences)
+				parsed.add(ParseCache.toSentence(sentence));
+		}
+		// whether the budget runs out depends on the load, do not keep such results
+		if (cache != null && !timedOut)
+			cache.put(key, ParseCache.merge(cached, parsed, levels, maxSentenceTokens));
+		return parsed;
+	}
 
-				if (handleNegation) {
-					if (negation_words.contains(word)) {
+	/**
+	 * What, besides the text, decides the tokens and tags of a document. The
+	 * parse levels are not part of it, they are kept in the cache entry.
+	 */
+	private String getCacheSource() {
+		if (isTaggerOnly())
+			return "tagger " + taggerModel;
+		return "corenlp";
+	}
 
-						parentNode = leaf.parent(tree).parent(tree);
-						getNegatedSentence(parentNode, hashTable, word, basePOSUtility);
+	/**
+	 * The {@link ParseCache} levels the configured features read.
+	 */
+	private int getParseLevels() {
+		String annotators = getAnnotators();
+		if (annotators.endsWith(", parse"))
+			return ParseCache.TREE;
+		if (annotators.endsWith(", depparse"))
+			return ParseCache.DEPENDENCIES;
+		return 0;
+	}
 
-					}
+	/**
+	 * Parses the tagged sentences one by one while the document is within
+	 * its time budget. Returns whether the budget ran out.
+	 */
+	private boolean parseWithinLimits(List<CoreMap> sentences, List<ParseCache.Sentence> parsed) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxParseMillis);
+		int fallbacks = 0;
+		boolean timedOut = false;
+
+		ResourcePool<StanfordCoreNLP> pool = this.parsers;
+		StanfordCoreNLP parser = null;
+		try {
+			for (CoreMap sentence : sentences) {
+				List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+				if (maxParseMillis > 0 && System.nanoTime() > deadline)
+					timedOut = true;
+				if (timedOut || (maxSentenceTokens > 0 && tokens.size() > maxSentenceTokens)) {
+					parsed.add(new ParseCache.Sentence(null, tokens));
+					fallbacks++;
+					continue;
 				}
 
+				if (parser == null)
+					parser = pool.borrow();
+				parser.annotate(new Annotation(Collections.singletonList(sentence)));
+
+				// CoreNLP puts a flat X tree on a sentence it gave up on
+				Tree tree = sentence.get(TreeAnnotation.class);
+				if (tree == null || tree.value().equals("X")) {
+					parsed.add(new ParseCache.Sentence(null, tokens));
+					fallbacks++;
+				} else {
+					parsed.add(new ParseCache.Sentence(tree, tokens));
+				}
 			}
-			int i = 0;
-			for (Tree leaf : leaves) {
+		} finally {
+			if (parser != null)
+				pool.release(parser);
+		}
+		if (fallbacks > 0)
+			fallbackCount.incrementAndGet();
+		return timedOut;
+	}
 
-				String value = hashTable.get(leaf.label().toString());
+	/**
+	 * Appends the words kept from one sentence. A word is handed to the
+	 * word chooser unless a negation earlier in the sentence already
+	 * rewrote it; a negation word rewrites the verbs, adverbs and
+	 * adjectives of its scope up to the first noun or pronoun after it.
+	 */
+	private void appendSentence(SentenceView view, SentimentCounts counts, StringBuilder newText) {
+		int length = view.size();
+		TokenBuffer output = tokenBuffers.get();
+		output.reset(length);
+		for (int i = 0; i < length; i++) {
+			String word = view.getWord(i);
+			String pos = view.getTag(i);
 
-				if (value != null) {
-					// boolean isStopWord = stop_words.contains(value);
-					if (i > 0) {
-						newText += " ";
-					}
+			if (!isAleadyChanged(word, output.get(i))) {
+				counts.add(word, pos);
 
-					newText += value;
-					// else
-					// newText+=poshashTable.get(leave.label().toString())+"_"+value;
+				if (!isPunctuation(word))
+					basePOSUtility.shouldInclude(i, word, pos, view.getContext(i), output);
+				else
+					output.set(i, word);
+			}
 
-					i++;
-				}
+			if (handleNegation && negation_words.contains(word))
+				getNegatedSentence(view, i, output);
+		}
 
+		output.appendTo(newText);
+	}
+
+	/**
+	 * Splits text into sentences and tokens with the PTB tokenizer, as the
+	 * tagger does, and returns them if the comment is trivial enough for the
+	 * fast path, null otherwise.
+	 */
+	public List<List<HasWord>> getFastPathSentences(String text) {
+		List<List<HasWord>> sentences = POSTagger.tokenize(text);
+		ArrayList<String> words = new ArrayList<String>();
+		boolean onlyEmoticons = true;
+		for (List<HasWord> sentence : sentences) {
+			for (HasWord token : sentence) {
+				String word = token.word().toLowerCase();
+				if (!isWordToken(word))
+					continue;
+				words.add(word);
+				if (!emoticon_words.contains(word))
+					onlyEmoticons = false;
 			}
-			// System.out.println(positiveSentiScore+" "+negativeSentiScore);
-			for (int j = 0; j < countExtremeNegative; j++)
-				newText += " includes_extremenegative ";
+		}
 
-			for (int j = 0; j < countExtremePositive; j++)
-				newText += " includes_extremepositive ";
+		if (words.size() <= FAST_PATH_MAX_WORDS || onlyEmoticons)
+			return sentences;
+		if (!fastPathPhrases.isEmpty()) {
+			ArrayList<String> phraseWords = new ArrayList<String>();
+			for (String word : words)
+				if (!emoticon_words.contains(word))
+					phraseWords.add(word);
+			if (fastPathPhrases.contains(joinWords(phraseWords.toArray(new String[phraseWords.size()]))))
+				return sentences;
+		}
+		return null;
+	}
 
-			for (int j = 0; j < countNegative; j++)
-				newText += " includes_negative ";
-			for (int j = 0; j < countPositive; j++)
-				newText += " includes_positive ";
+	/**
+	 * Whether a lower cased PTB token is a word rather than punctuation or
+	 * an escaped bracket such as -lrb-.
+	 */
+	private static boolean isWordToken(String token) {
+		if (token.length() == 5 && token.charAt(0) == '-' && token.charAt(4) == '-')
+			return false;
+		for (int i = 0; i < token.length(); i++)
+			if (Character.isLetterOrDigit(token.charAt(i)))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Tags the sentences as written and processes them like the tagged
+	 * sentences of an unparsed document; the words are lower cased as they
+	 * are emitted.
+	 */
+	private String getFastPathText(List<List<HasWord>> sentences, double[] features) {
+		// left3words is also the model of the CoreNLP pos annotator
+		String model = taggerModel != null ? taggerModel : POSTagger.MODEL_LEFT3WORDS;
+		List<List<CoreLabel>> tagged = new POSTagger(model).tagTokens(sentences);
+
+		SentimentCounts counts = new SentimentCounts();
+		StringBuilder newText = new StringBuilder();
+		for (List<CoreLabel> sentence : tagged)
+			appendSentence(SentenceView.fromTokens(sentence), counts, newText);
+		counts.copyTo(features);
+
+		return newText.toString();
+	}
+
+	/**
+	 * Sentiment and slang words seen so far in a comment.
+	 */
+	private class SentimentCounts {
+		private int countPositive = 0;
+		private int countNegative = 0;
+		private int countExtremeNegative = 0;
+		private int countExtremePositive = 0;
+		private int countSwearWord = 0;
+
+		void add(String word, String pos) {
+			if (markSlangWords && AddSentiWord.isSlangWord(word))
+				countSwearWord++;
+			if (addSentiScoreType == 0)
+				return;
+
+			double wordPosScore = AddSentiWord.getPositiveSentiScore(word, pos);
+
+			if (wordPosScore != 0 && addSentiScoreType > 0) {
+				if (addSentiScoreType == 4 && wordPosScore > POSITIVE_THRESHOLD)
+					countExtremePositive++;
+				else
+					countPositive++;
+
+			}
 
-			for (int j = 0; j < countSwearWord; j++)
-				newText += " includes_slangwords ";
+			double wordNegScore = AddSentiWord.getNegativeSentiScore(word, pos);
 
+			if (wordNegScore != 0 && addSentiScoreType > 0) {
+				if (addSentiScoreType == 4 && wordNegScore > NEGATIVE_THRESHOLD)
+					countExtremeNegative++;
+				else
+					countNegative++;
+
+			}
 		}
 
-		return newText;
+		/**
+		 * Writes the counts in the order of {@link #getFeatureNames()}.
+		 */
+		void copyTo(double[] features) {
+			if (features == null)
+				return;
+			int j = 0;
+			if (addSentiScoreType == 4) {
+				features[j++] = countExtremeNegative;
+				features[j++] = countExtremePositive;
+			}
+			if (addSentiScoreType > 0) {
+				features[j++] = countNegative;
+				features[j++] = countPositive;
+			}
+			if (markSlangWords)
+				features[j++] = countSwearWord;
+		}
 	}
 
-	private void getNegatedSentence(Tree tree, Hashtable<String, String> hashTable, String negatedWord,
-			BasePOSUtility basePOSUtility) {
+	private static String joinWords(String[] words) {
+		StringBuilder builder = new StringBuilder();
+		for (String word : words) {
+			if (word.isEmpty())
+				continue;
+			if (builder.length() > 0)
+				builder.append(' ');
+			builder.append(word);
+		}
+		return builder.toString();
+	}
 
-		List<Tree> leaves = new ArrayList<>();
+	private void getNegatedSentence(SentenceView view, int negationIndex, TokenBuffer output) {
+		String negatedWord = view.getWord(negationIndex);
+		String context = view.getContext(negationIndex);
 		boolean isNegWordfound = false;
-		boolean isNounFundAfterNegation = false;
-		leaves = tree.getLeaves(leaves);
-		// boolean isNegationFound=false;
-		for (Tree leave : leaves) {
-			String word = leave.toString().toLowerCase();
+		for (int i = view.getScopeStart(negationIndex); i < view.getScopeEnd(negationIndex); i++) {
+			String word = view.getWord(i);
+			String pos = view.getTag(i);
 			if (word.equals(negatedWord))
 				isNegWordfound = true;
-			String pos_arr[] = leave.parent(tree).toString().replace(")", "").replace("(", "").split(" ");
-			String pos = "";
-			if (pos_arr.length == 2) {
-				pos = pos_arr[0];
-
-			}
 			if (isNegWordfound && (pos.startsWith("NN") || pos.startsWith("PR")))
-				isNounFundAfterNegation = true;
-			if (isNounFundAfterNegation)
 				return;
-			// System.out.println(word+" "+ pos);
-			String neg = negatedWord(word, pos);
-			double d = AddSentiWord.getPositiveSentiScore(word, pos);
-			// handlePositiveSentimentStatusByScore(d);
-			d = AddSentiWord.getNegativeSentiScore(word, pos);
-			// handleNegativeSentimentStatusByScore(d);
-
-			basePOSUtility.shouldInclude(leave.label().toString(), neg, pos, tree.value(), hashTable);
 
+			basePOSUtility.shouldInclude(i, negatedWord(word, pos), pos, context, output);
 		}
 
 	}
@@ -255,21 +916,19 @@ public class POSTagProcessor implements TextPreprocessor {
 			return word;
 	}
 
-	private boolean isAleadyChanged(Tree leaf, Hashtable<String, String> hashtable) {
-		String val = hashtable.get(leaf.label().toString());
-		String compare = leaf.toString().toLowerCase();
-		// System.out.println(leaf.label().toString()+" "+val+" gg: "+compare);
-		if (val == null || val.equals(compare))
-			return false;
-		else
-			return true;
+	private boolean isAleadyChanged(String word, String value) {
+		return value != null && !value.equals(word);
 	}
 
-	private boolean isPunctuation(String str) {
-		if (Pattern.matches("\\p{Punct}", str)) {
-			return true;
-		}
-		return false;
+	// the characters of \p{Punct}
+	private static final String PUNCTUATION = "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~";
+
+	private static boolean isPunctuation(char c) {
+		return PUNCTUATION.indexOf(c) >= 0;
+	}
+
+	private static boolean isPunctuation(String str) {
+		return str.length() == 1 && isPunctuation(str.charAt(0));
 	}
 
 }
\ No newline at end of file
@@ -18,52 +18,142 @@
 
 package edu.siu.sentise.preprocessing;
 
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.ling.TaggedWord;
 import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 
+/**
+ * POS tagging with a bare MaxentTagger, for configurations that need tags
+ * but no parse tree. A model is loaded once and shared by every thread and
+ * every POSTagger using the same file.
+ */
 public class POSTagger {
 
+	public static final String MODEL_BIDIRECTIONAL = "src/taggers/bidirectional-distsim-wsj-0-18.tagger";
+	public static final String MODEL_LEFT3WORDS = "src/taggers/english-left3words-distsim.tagger";
+	// the same model as shipped in the CoreNLP models jar, the default of its pos annotator
+	private static final String CLASSPATH_LEFT3WORDS = "edu/stanford/nlp/models/pos-tagger/english-left3words/english-left3words-distsim.tagger";
+	// the bidirectional model of the models jar, trained on more data than the WSJ only one
+	private static final String CLASSPATH_BIDIRECTIONAL = "edu/stanford/nlp/models/pos-tagger/english-bidirectional/english-bidirectional-distsim.tagger";
+
+	private static final ConcurrentHashMap<String, MaxentTagger> loadedTaggers = new ConcurrentHashMap<String, MaxentTagger>();
+
+	private final String model;
+	private final MaxentTagger tagger;
+
+	public POSTagger(String model) {
+		this.model = model;
+		this.tagger = getTagger(model);
+	}
+
+	/**
+	 * The shared tagger of a model file, loaded on first use.
+	 */
+	public static MaxentTagger getTagger(String model) {
+		MaxentTagger tagger = loadedTaggers.get(model);
+		if (tagger != null)
+			return tagger;
+		synchronized (loadedTaggers) {
+			tagger = loadedTaggers.get(model);
+			if (tagger == null) {
+				String path = model;
+				// src/taggers only holds the training properties unless the models were copied there
+				if (model.equals(MODEL_LEFT3WORDS) && !new File(model).exists())
+					path = CLASSPATH_LEFT3WORDS;
+				else if (model.equals(MODEL_BIDIRECTIONAL) && !new File(model).exists())
+					path = CLASSPATH_BIDIRECTIONAL;
+				System.err.println("Loading POS tagger " + path);
+				tagger = new MaxentTagger(path);
+				loadedTaggers.put(model, tagger);
+			}
+		}
+		return tagger;
+	}
+
+	public String getModel() {
+		return model;
+	}
+
+	/**
+	 * Splits text into sentences and tokens the way the CoreNLP tokenize and
+	 * ssplit annotators do, and tags all sentences in one call.
+	 */
+	public List<List<CoreLabel>> tagText(String text) {
+		return tagTokens(tokenize(text));
+	}
+
+	/**
+	 * The sentences and tokens of text, split by the PTB tokenizer as in
+	 * {@link #tagText(String)}.
+	 */
+	public static List<List<HasWord>> tokenize(String text) {
+		return MaxentTagger.tokenizeText(new StringReader(text));
+	}
+
+	/**
+	 * Tags sentences returned by {@link #tokenize(String)}.
+	 */
+	public List<List<CoreLabel>> tagTokens(List<List<HasWord>> sentences) {
+		List<List<TaggedWord>> tagged = tagSentences(sentences);
+
+		ArrayList<List<CoreLabel>> result = new ArrayList<List<CoreLabel>>(tagged.size());
+		for (List<TaggedWord> sentence : tagged) {
+			ArrayList<CoreLabel> tokens = new ArrayList<CoreLabel>(sentence.size());
+			for (int i = 0; i < sentence.size(); i++) {
+				TaggedWord word = sentence.get(i);
+				CoreLabel token = new CoreLabel();
+				token.setWord(word.word());
+				token.setValue(word.word());
+				token.setTag(word.tag());
+				token.setIndex(i + 1);
+				tokens.add(token);
+			}
+			result.add(tokens);
+		}
+		return result;
+	}
+
+	public List<List<TaggedWord>> tagSentences(List<? extends List<? extends HasWord>> sentences) {
+		return tagger.process(sentences);
+	}
+
 	public static void main(String[] args) {
 		addPOSToText();
 	}
+
 	private static String tagPartsOfSpeech(MaxentTagger tagger, String text)
 	{
 		String tagged = tagger.tagString(text);
 		// Output the result
 		return tagged;
 	}
+
 	public static void addPOSToText()
 	{
-		//try
-		//{
-		MaxentTagger tagger = new MaxentTagger("src/taggers/bidirectional-distsim-wsj-0-18.tagger");
+		MaxentTagger tagger = getTagger(MODEL_BIDIRECTIONAL);
 		String sample = "This is a sample text";
 		String tagged = tagPartsOfSpeech(tagger,sample);
 		System.out.println(tagged);
-		
-		 
-		
-		/*}
-		catch(ClassNotFoundException e)
-		{
-			e.printStackTrace();
-		}
-		catch(IOException e)
-		{
-			e.printStackTrace();
-		}*/
 	}
+
 	private static String getPOSToWord(MaxentTagger tagger, String word)
 	{
 		String tagged = tagger.tagString(word);
 		// Output the result
 		return tagged;
 	}
+
 	public static String addPOSToWord(String word)
 	{
-		MaxentTagger tagger = new MaxentTagger("src/taggers/bidirectional-distsim-wsj-0-18.tagger");
-		//String sample = "This is a sample text";
-		String tagged = getPOSToWord(tagger,word);
+		String tagged = getPOSToWord(getTagger(MODEL_BIDIRECTIONAL),word);
 		return tagged;
 	}
-	
+
 }
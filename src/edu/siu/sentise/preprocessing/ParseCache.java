@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.preprocessing;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import edu.siu.sentise.util.TextHash;
+import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.semgraph.SemanticGraph;
+import edu.stanford.nlp.semgraph.SemanticGraphCoreAnnotations.BasicDependenciesAnnotation;
+import edu.stanford.nlp.semgraph.SemanticGraphEdge;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeCoreAnnotations.TreeAnnotation;
+import edu.stanford.nlp.util.CoreMap;
+
+/**
+ * CoreNLP results kept on disk between runs, so a second run over the same
+ * oracle does not parse again, whatever the tag, negation or sentiment
+ * options. Entries are keyed by a 64 bit hash of the text and of what
+ * tagged it (the CoreNLP pipeline or a tagger model), not of the
+ * annotator list: an entry holds the words and tags of every sentence,
+ * plus the parse tree and the dependency heads when they were ever
+ * computed for the text, and each configuration reads the view it needs.
+ * A configuration needing a level the entry lacks annotates again and the
+ * entry is replaced by the union of both results, see
+ * {@link #merge(Entry, List, int, int)}.
+ *
+ * The file is a sequence of records: key (long), payload length (int) and
+ * the payload. A later record of the same key replaces an earlier one.
+ * The existing records are read through a memory mapping; entries added
+ * during the run are kept in memory and appended by {@link #flush()}.
+ * A mapping addresses at most 2 GB, so a flush that would grow the file
+ * past that rewrites it with only the latest record of every key, and
+ * drops the records that still do not fit.
+ */
+public class ParseCache {
+
+	/** The entry holds the constituency trees of the sentences that have one. */
+	public static final int TREE = 1;
+	/** The entry holds the dependency heads of every sentence. */
+	public static final int DEPENDENCIES = 2;
+
+	private static final byte FORMAT = 3; // first payload byte, older payloads are misses
+	private static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+	private static final ConcurrentHashMap<String, ParseCache> openCaches = new ConcurrentHashMap<String, ParseCache>();
+
+	private final File file;
+	private final ByteBuffer mapped;
+	private final HashMap<Long, Integer> offsets = new HashMap<Long, Integer>();
+	private final ConcurrentHashMap<Long, byte[]> added = new ConcurrentHashMap<Long, byte[]>();
+	private final ConcurrentLinkedQueue<Long> unwritten = new ConcurrentLinkedQueue<Long>();
+
+	/**
+	 * One cache per file and JVM, so repeated runs in the same process
+	 * share the entries added so far.
+	 */
+	public static ParseCache open(String fileName) {
+		ParseCache cache = openCaches.get(fileName);
+		if (cache == null) {
+			cache = new ParseCache(new File(fileName));
+			ParseCache existing = openCaches.putIfAbsent(fileName, cache);
+			if (existing != null)
+				cache = existing;
+		}
+		return cache;
+	}
+
+	private ParseCache(File file) {
+		this.file = file;
+		this.mapped = map(file);
+
+		int position = 0;
+		int limit = mapped.limit();
+		// a record cut short by an interrupted flush ends the usable part
+		while (position + 12 <= limit) {
+			long key = mapped.getLong(position);
+			int length = mapped.getInt(position + 8);
+			if (length < 0 || position + 12 + length > limit)
+				break;
+			offsets.put(key, position + 12);
+			position += 12 + length;
+		}
+		if (!offsets.isEmpty())
+			System.out.println("Parse cache entries loaded: " + offsets.size());
+	}
+
+	private static ByteBuffer map(File file) {
+		if (!file.exists() || file.length() == 0)
+			return ByteBuffer.allocate(0);
+		try {
+			RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = randomAccessFile.getChannel();
+				// a record crossing the limit of a file grown by another version is ignored
+				return channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), MAX_FILE_SIZE));
+			} finally {
+				// the mapping stays valid after the file is closed
+				randomAccessFile.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			return ByteBuffer.allocate(0);
+		} catch (IllegalArgumentException e) {
+			e.printStackTrace();
+			return ByteBuffer.allocate(0);
+		}
+	}
+
+	public static long getKey(String source, String text) {
+		return TextHash.fnv64(source + '\u0000' + text);
+	}
+
+	/**
+	 * The cached annotation of a text, or null if it has not been annotated
+	 * yet.
+	 */
+	public Entry get(long key) {
+		byte[] payload = added.get(key);
+		if (payload != null)
+			return decode(ByteBuffer.wrap(payload), 0);
+
+		Integer offset = offsets.get(key);
+		if (offset == null)
+			return null;
+		// absolute reads only, so the shared buffer is safe for concurrent readers
+		return decode(mapped, offset);
+	}
+
+	/**
+	 * Adds or replaces the entry of key.
+	 */
+	public void put(long key, Entry entry) {
+		added.put(key, encode(entry));
+		unwritten.add(key);
+	}
+
+	/**
+	 * The entry for sentences annotated with levels, keeping the levels of
+	 * old it did not compute when both tokenized the text the same way.
+	 * maxSentenceTokens is the length cap the trees were built with.
+	 */
+	public static Entry merge(Entry old, List<Sentence> sentences, int levels, int maxSentenceTokens) {
+		int kept = old == null || !sameTokens(old.getSentences(), sentences) ? 0 : old.getLevels() & ~levels;
+		if (kept == 0)
+			return new Entry(sentences, levels, maxSentenceTokens);
+
+		ArrayList<Sentence> merged = new ArrayList<Sentence>(sentences.size());
+		for (int i = 0; i < sentences.size(); i++) {
+			Sentence current = sentences.get(i);
+			Sentence previous = old.getSentences().get(i);
+			merged.add(new Sentence((kept & TREE) != 0 ? previous.getTree() : current.getTree(), current.getTokens(),
+					(kept & DEPENDENCIES) != 0 ? previous.getHeads() : current.getHeads()));
+		}
+		return new Entry(merged, levels | kept, (kept & TREE) != 0 ? old.getMaxSentenceTokens() : maxSentenceTokens);
+	}
+
+	private static boolean sameTokens(List<Sentence> a, List<Sentence> b) {
+		if (a.size() != b.size())
+			return false;
+		for (int i = 0; i < a.size(); i++) {
+			List<CoreLabel> tokensA = a.get(i).getTokens();
+			List<CoreLabel> tokensB = b.get(i).getTokens();
+			if (tokensA.size() != tokensB.size())
+				return false;
+			for (int j = 0; j < tokensA.size(); j++)
+				if (!tokensA.get(j).word().equals(tokensB.get(j).word()))
+					return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends the entries added since the last flush to the file, or
+	 * compacts it when they would grow it past 2 GB.
+	 */
+	public synchronized void flush() {
+		if (unwritten.isEmpty())
+			return;
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists())
+			parent.mkdirs();
+
+		// replaced before this flush, its latest payload is written once
+		HashSet<Long> keys = new HashSet<Long>();
+		long appendedSize = 0;
+		Long key;
+		while ((key = unwritten.poll()) != null)
+			if (keys.add(key))
+				appendedSize += 12 + added.get(key).length;
+
+		try {
+			if (file.length() + appendedSize > MAX_FILE_SIZE) {
+				compact();
+				return;
+			}
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(file, true)));
+			try {
+				for (Long written : keys)
+					writeRecord(out, written, added.get(written));
+				System.out.println("Parse cache entries written: " + keys.size());
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Rewrites the file with the latest record of every key, as many as fit
+	 * in {@link #MAX_FILE_SIZE}. The records read so far stay readable
+	 * through the mapping of the old file.
+	 */
+	private void compact() throws IOException {
+		File compacted = new File(file.getPath() + ".tmp");
+		long size = 0;
+		int count = 0;
+		int dropped = 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted)));
+		try {
+			for (Long key : offsets.keySet()) {
+				if (added.containsKey(key))
+					continue;
+				int offset = offsets.get(key);
+				byte[] payload = new byte[mapped.getInt(offset - 4)];
+				ByteBuffer view = mapped.duplicate();
+				view.position(offset);
+				view.get(payload);
+				if (size + 12 + payload.length > MAX_FILE_SIZE) {
+					dropped++;
+					continue;
+				}
+				writeRecord(out, key, payload);
+				size += 12 + payload.length;
+				count++;
+			}
+			for (Long key : added.keySet()) {
+				byte[] payload = added.get(key);
+				if (size + 12 + payload.length > MAX_FILE_SIZE) {
+					dropped++;
+					continue;
+				}
+				writeRecord(out, key, payload);
+				size += 12 + payload.length;
+				count++;
+			}
+		} finally {
+			out.close();
+		}
+
+		Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		System.out.println("Parse cache compacted to " + count + " entries, dropped " + dropped);
+	}
+
+	private static void writeRecord(DataOutputStream out, long key, byte[] payload) throws IOException {
+		out.writeLong(key);
+		out.writeInt(payload.length);
+		out.write(payload);
+	}
+
+	public int size() {
+		int size = added.size();
+		for (Long key : offsets.keySet())
+			if (!added.containsKey(key))
+				size++;
+		return size;
+	}
+
+	public static Sentence toSentence(CoreMap sentence) {
+		Tree tree = sentence.get(TreeAnnotation.class);
+		List<CoreLabel> tokens = sentence.get(TokensAnnotation.class);
+		SemanticGraph graph = sentence.get(BasicDependenciesAnnotation.class);
+		if (graph == null)
+			return new Sentence(tree, tokens);
+
+		// 1 based index of the governor of every token, 0 for the root
+		int[] heads = new int[tokens.size()];
+		for (SemanticGraphEdge edge : graph.edgeIterable()) {
+			int dependent = edge.getDependent().index();
+			if (dependent >= 1 && dependent <= heads.length)
+				heads[dependent - 1] = edge.getGovernor().index();
+		}
+		return new Sentence(tree, tokens, heads);
+	}
+
+	private static byte[] encode(Entry entry) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeByte(FORMAT);
+			out.writeByte(entry.getLevels());
+			out.writeInt(entry.getMaxSentenceTokens());
+			out.writeInt(entry.getSentences().size());
+			for (Sentence sentence : entry.getSentences()) {
+				List<CoreLabel> tokens = sentence.getTokens();
+				out.writeInt(tokens.size());
+				for (CoreLabel token : tokens) {
+					writeString(out, token.word());
+					writeString(out, token.tag() == null ? "" : token.tag());
+				}
+				Tree tree = sentence.getTree();
+				out.writeBoolean(tree != null);
+				if (tree != null)
+					writeString(out, tree.toString());
+				int[] heads = sentence.getHeads();
+				out.writeBoolean(heads != null);
+				if (heads != null)
+					for (int head : heads)
+						out.writeInt(head);
+			}
+			out.close();
+		} catch (IOException e) {
+			// cannot happen on a byte array
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static Entry decode(ByteBuffer buffer, int position) {
+		int[] cursor = { position };
+		if (buffer.get(cursor[0]++) != FORMAT)
+			return null;
+		int levels = buffer.get(cursor[0]++);
+		int maxSentenceTokens = readInt(buffer, cursor);
+		int numSentences = readInt(buffer, cursor);
+		ArrayList<Sentence> sentences = new ArrayList<Sentence>(numSentences);
+		for (int s = 0; s < numSentences; s++) {
+			int count = readInt(buffer, cursor);
+			ArrayList<CoreLabel> tokens = new ArrayList<CoreLabel>(count);
+			for (int i = 0; i < count; i++) {
+				CoreLabel token = new CoreLabel();
+				String word = readString(buffer, cursor);
+				String tag = readString(buffer, cursor);
+				token.setWord(word);
+				token.setValue(word);
+				if (!tag.isEmpty())
+					token.setTag(tag);
+				token.setIndex(i + 1);
+				tokens.add(token);
+			}
+			Tree tree = null;
+			if (buffer.get(cursor[0]++) != 0) {
+				tree = Tree.valueOf(readString(buffer, cursor));
+				// a token the tree reader splits differently, treat it as a miss
+				if (tree == null || tree.getLeaves().size() != count)
+					return null;
+				tree.indexLeaves();
+			}
+			int[] heads = null;
+			if (buffer.get(cursor[0]++) != 0) {
+				heads = new int[count];
+				for (int i = 0; i < count; i++)
+					heads[i] = readInt(buffer, cursor);
+			}
+			sentences.add(new Sentence(tree, tokens, heads));
+		}
+		return new Entry(sentences, levels, maxSentenceTokens);
+	}
+
+	private static int readInt(ByteBuffer buffer, int[] cursor) {
+		int value = buffer.getInt(cursor[0]);
+		cursor[0] += 4;
+		return value;
+	}
+
+	private static String readString(ByteBuffer buffer, int[] cursor) {
+		int length = readInt(buffer, cursor);
+		byte[] bytes = new byte[length];
+		ByteBuffer view = buffer.duplicate();
+		view.position(cursor[0]);
+		view.get(bytes);
+		cursor[0] += length;
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The annotation of one text: its sentences, which of the parse levels
+	 * ({@link #TREE}, {@link #DEPENDENCIES}) were computed for all of them,
+	 * and the sentence length cap the trees were built with.
+	 */
+	public static class Entry {
+		private final List<Sentence> sentences;
+		private final int levels;
+		private final int maxSentenceTokens;
+
+		public Entry(List<Sentence> sentences, int levels, int maxSentenceTokens) {
+			this.sentences = sentences;
+			this.levels = levels;
+			this.maxSentenceTokens = maxSentenceTokens;
+		}
+
+		public List<Sentence> getSentences() {
+			return sentences;
+		}
+
+		public int getLevels() {
+			return levels;
+		}
+
+		public int getMaxSentenceTokens() {
+			return maxSentenceTokens;
+		}
+
+		/**
+		 * Whether the entry holds the given levels, with trees built under
+		 * the same length cap when trees are asked for.
+		 */
+		public boolean covers(int neededLevels, int neededMaxSentenceTokens) {
+			if ((levels & neededLevels) != neededLevels)
+				return false;
+			return (neededLevels & TREE) == 0 || maxSentenceTokens == neededMaxSentenceTokens;
+		}
+	}
+
+	/**
+	 * A sentence: its tagged tokens, the tree when the parser ran and could
+	 * parse it, and the index of the governor of each token when the
+	 * dependency parser ran.
+	 */
+	public static class Sentence {
+		private final Tree tree;
+		private final List<CoreLabel> tokens;
+		private final int[] heads;
+
+		public Sentence(Tree tree, List<CoreLabel> tokens) {
+			this(tree, tokens, null);
+		}
+
+		public Sentence(Tree tree, List<CoreLabel> tokens, int[] heads) {
+			this.tree = tree;
+			this.tokens = tokens;
+			this.heads = heads;
+		}
+
+		public Tree getTree() {
+			return tree;
+		}
+
+		public List<CoreLabel> getTokens() {
+			return tokens;
+		}
+
+		public int[] getHeads() {
+			return heads;
+		}
+	}
+
+}
@@ -18,17 +18,12 @@
 
 package edu.siu.sentise.preprocessing;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 
-import edu.siu.sentise.model.SentimentData;
-
 public class QuestionMarkHandler implements TextPreprocessor {
 
-	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentiList) {
-		for (int i = 0; i < sentiList.size(); i++)
-			sentiList.get(i).setText(replacePunctuations(sentiList.get(i).getText()));
-		return sentiList;
+	public String process(String text) {
+		return replacePunctuations(text);
 	}
 
 	private String replacePunctuations(String text) {
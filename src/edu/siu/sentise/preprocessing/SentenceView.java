@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.preprocessing;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * Flat, index based view of one sentence: for every token its lower case
+ * word, POS tag, the label of the constituent above its POS node (the
+ * context) and the token span of that constituent, which is the scope a
+ * negation word at that position applies to. Built with one walk over the
+ * parse tree instead of a leaf.parent(tree) search per token.
+ *
+ * Without a constituency tree the scope comes from the dependency parse
+ * (the subtree of the word the negation modifies) or, with tags only, runs
+ * up to the end of the clause.
+ */
+public class SentenceView {
+
+	private static final String CLAUSE_BOUNDARIES = ".,;:!?";
+
+	private final String[] words;
+	private final String[] tags;
+	private final String[] contexts;
+	private final int[] scopeStart;
+	private final int[] scopeEnd;
+
+	private SentenceView(int length) {
+		words = new String[length];
+		tags = new String[length];
+		contexts = new String[length];
+		scopeStart = new int[length];
+		scopeEnd = new int[length];
+	}
+
+	public static SentenceView fromTree(Tree tree) {
+		ArrayList<Tree> leaves = new ArrayList<Tree>();
+		ArrayList<Tree> preTerminals = new ArrayList<Tree>();
+		ArrayList<Tree> grandParents = new ArrayList<Tree>();
+		IdentityHashMap<Tree, int[]> spans = new IdentityHashMap<Tree, int[]>();
+		collectLeaves(tree, null, null, leaves, preTerminals, grandParents, spans);
+
+		SentenceView view = new SentenceView(leaves.size());
+		for (int i = 0; i < leaves.size(); i++) {
+			String word = leaves.get(i).value();
+			view.words[i] = word.toLowerCase();
+			view.tags[i] = getTag(preTerminals.get(i), word);
+			Tree grandParent = grandParents.get(i);
+			view.contexts[i] = grandParent == null ? "" : grandParent.value();
+			int[] span = grandParent == null ? null : spans.get(grandParent);
+			view.scopeStart[i] = span == null ? 0 : span[0];
+			view.scopeEnd[i] = span == null ? leaves.size() : span[1];
+		}
+		return view;
+	}
+
+	/**
+	 * Tokens without a parse: no context, and a negation applies up to the
+	 * next punctuation mark or "but".
+	 */
+	public static SentenceView fromTokens(List<CoreLabel> tokens) {
+		SentenceView view = tokenView(tokens);
+		view.setClauseScopes();
+		return view;
+	}
+
+	/**
+	 * Tokens with the 1 based index of their governor (0 for the root). A
+	 * negation applies to the token span of the subtree of its governor, the
+	 * dependency counterpart of the constituent above it in the tree,
+	 * limited to its own clause.
+	 */
+	public static SentenceView fromDependencies(List<CoreLabel> tokens, int[] heads) {
+		SentenceView view = tokenView(tokens);
+		view.setClauseScopes();
+
+		int n = tokens.size();
+		int[] spanStart = new int[n];
+		int[] spanEnd = new int[n];
+		for (int i = 0; i < n; i++) {
+			spanStart[i] = i;
+			spanEnd[i] = i + 1;
+		}
+		// widen the span of every ancestor, at most n steps in case of a cycle
+		for (int i = 0; i < n; i++) {
+			int head = heads[i];
+			for (int steps = 0; head > 0 && head <= n && steps < n; steps++) {
+				int ancestor = head - 1;
+				spanStart[ancestor] = Math.min(spanStart[ancestor], i);
+				spanEnd[ancestor] = Math.max(spanEnd[ancestor], i + 1);
+				head = heads[ancestor];
+			}
+		}
+
+		int clauseStart = 0;
+		for (int i = 0; i < n; i++) {
+			int head = heads[i];
+			// a negation at the root keeps its clause scope
+			if (head > 0 && head <= n) {
+				view.scopeStart[i] = Math.max(spanStart[head - 1], clauseStart);
+				view.scopeEnd[i] = Math.min(spanEnd[head - 1], view.scopeEnd[i]);
+			}
+			if (isClauseBoundary(view.words[i]))
+				clauseStart = i + 1;
+		}
+		return view;
+	}
+
+	private static SentenceView tokenView(List<CoreLabel> tokens) {
+		SentenceView view = new SentenceView(tokens.size());
+		for (int i = 0; i < tokens.size(); i++) {
+			CoreLabel token = tokens.get(i);
+			view.words[i] = token.word().toLowerCase();
+			view.tags[i] = token.tag() == null ? "" : token.tag();
+			view.contexts[i] = "";
+		}
+		return view;
+	}
+
+	private void setClauseScopes() {
+		int end = words.length;
+		for (int i = words.length - 1; i >= 0; i--) {
+			scopeStart[i] = i;
+			scopeEnd[i] = end;
+			if (isClauseBoundary(words[i]))
+				end = i;
+		}
+	}
+
+	private static boolean isClauseBoundary(String word) {
+		if (word.equals("but"))
+			return true;
+		return word.length() == 1 && CLAUSE_BOUNDARIES.indexOf(word.charAt(0)) >= 0;
+	}
+
+	/**
+	 * Collects the leaves in order with their POS node and grandparent, and
+	 * the leaf span of every inner node above the POS level.
+	 */
+	private static void collectLeaves(Tree node, Tree parent, Tree grandParent, List<Tree> leaves,
+			List<Tree> preTerminals, List<Tree> grandParents, IdentityHashMap<Tree, int[]> spans) {
+		if (node.isLeaf()) {
+			leaves.add(node);
+			preTerminals.add(parent);
+			grandParents.add(grandParent);
+			return;
+		}
+		int start = leaves.size();
+		for (Tree child : node.children())
+			collectLeaves(child, node, parent, leaves, preTerminals, grandParents, spans);
+		if (!node.isPreTerminal())
+			spans.put(node, new int[] { start, leaves.size() });
+	}
+
+	/**
+	 * The tag as it used to be read from the string form "(TAG word)" of
+	 * the POS node: empty when that does not split into exactly two parts.
+	 */
+	private static String getTag(Tree preTerminal, String word) {
+		if (preTerminal == null)
+			return "";
+		String tag = preTerminal.value();
+		if (word.indexOf(' ') < 0 && word.indexOf('(') < 0 && word.indexOf(')') < 0 && tag.indexOf(' ') < 0
+				&& tag.indexOf('(') < 0 && tag.indexOf(')') < 0 && !word.isEmpty())
+			return tag;
+
+		String pos_arr[] = (tag + " " + word).replace(")", "").replace("(", "").split(" ");
+		return pos_arr.length == 2 ? pos_arr[0] : "";
+	}
+
+	public int size() {
+		return words.length;
+	}
+
+	public String getWord(int index) {
+		return words[index];
+	}
+
+	public String getTag(int index) {
+		return tags[index];
+	}
+
+	public String getContext(int index) {
+		return contexts[index];
+	}
+
+	public int getScopeStart(int index) {
+		return scopeStart[index];
+	}
+
+	public int getScopeEnd(int index) {
+		return scopeEnd[index];
+	}
+
+}
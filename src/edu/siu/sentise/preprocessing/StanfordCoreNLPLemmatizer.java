@@ -21,55 +21,119 @@ package edu.siu.sentise.preprocessing;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.stanford.nlp.ling.CoreAnnotations.LemmaAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.SentencesAnnotation;
 import edu.stanford.nlp.ling.CoreAnnotations.TokensAnnotation;
-import edu.siu.sentise.model.SentimentData;
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.pipeline.Annotation;
 import edu.stanford.nlp.pipeline.StanfordCoreNLP;
 import edu.stanford.nlp.util.CoreMap;
 
+/**
+ * Lemmatizer for StringToWordVector. Weka calls stem() once per token.
+ *
+ * Only words ending in "s" are replaced by their lemma, so any other word
+ * made of letters and digits, a single CoreNLP token, is returned as it is
+ * without annotating it. The lemmas of the remaining words are kept in a
+ * bounded cache keyed by the surface form and shared by all instances;
+ * CoreNLP only runs for such a word not seen before. Each word is
+ * annotated alone, so the cache never depends on which comments were seen
+ * first.
+ */
 public class StanfordCoreNLPLemmatizer  implements weka.core.stemmers.Stemmer  {
 
-	private StanfordCoreNLP pipeline = null;
+	// the cache keeps the words used since the last two rotations, an
+	// approximate LRU that needs no lock on a hit
+	private static final int MAX_CACHED_LEMMAS = 200000;
+	private static volatile ConcurrentHashMap<String, String> recentLemmas = new ConcurrentHashMap<String, String>();
+	private static volatile ConcurrentHashMap<String, String> olderLemmas = new ConcurrentHashMap<String, String>();
+
+	private transient StanfordCoreNLP pipeline = null;
 		
+	// the pipeline is built on the first cache miss
 	public StanfordCoreNLPLemmatizer () {
-	
-		 Properties props = new Properties();
-		  props.setProperty("annotators","tokenize, ssplit, pos, lemma");
-	      pipeline = new StanfordCoreNLP(props);
 	}
-	
-  	
-	
-	public  String stem(String word) 
-    { 
-       StringBuilder lema=new StringBuilder();
-        // Create an empty Annotation just with the given text 
-        Annotation document = new Annotation(word); 
-        // run all Annotators on this text 
-        pipeline.annotate(document); 
-        // Iterate over all of the sentences found 
-        List<CoreMap> sentences = document.get(SentencesAnnotation.class); 
-        for(CoreMap sentence: sentences) { 
-            // Iterate over all tokens in a sentence 
-            for (CoreLabel token: sentence.get(TokensAnnotation.class)) { 
-                // Retrieve and add the lemma for each word into the 
-                // list of lemmas 
-            	//System.out.println(token.value().toString());
-            	if(!token.value().toString().endsWith("s"))
-					lema.append(token.value().toString());
-			  else
-                 lema.append((token.get(LemmaAnnotation.class)));
-                
-            } 
-        } 
-        return lema.toString(); 
-    }
 
+	private synchronized StanfordCoreNLP getPipeline() {
+		if (pipeline == null) {
+			Properties props = new Properties();
+			props.setProperty("annotators", "tokenize, ssplit, pos, lemma");
+			pipeline = new StanfordCoreNLP(props);
+		}
+		return pipeline;
+	}
+
+	public String stem(String word) {
+		if (!word.endsWith("s") && isSingleToken(word))
+			return word;
+
+		String lemma = recentLemmas.get(word);
+		if (lemma != null)
+			return lemma;
+		lemma = olderLemmas.get(word);
+		if (lemma == null) {
+			// a "word" can still be several CoreNLP tokens, their lemmas are joined
+			StringBuilder joined = new StringBuilder();
+			for (String tokenLemma : lemmatize(word))
+				joined.append(tokenLemma);
+			lemma = joined.toString();
+		}
+		cacheLemma(word, lemma);
+		return lemma;
+	}
+
+	private static boolean isSingleToken(String word) {
+		for (int i = 0; i < word.length(); i++)
+			if (!Character.isLetterOrDigit(word.charAt(i)))
+				return false;
+		return true;
+	}
 
+	private List<String> lemmatize(String text) {
+		Annotation document = new Annotation(text);
+		StanfordCoreNLP current = getPipeline();
+		synchronized (current) {
+			current.annotate(document);
+		}
+
+		ArrayList<String> result = new ArrayList<String>();
+		List<CoreMap> sentences = document.get(SentencesAnnotation.class);
+		for (CoreMap sentence : sentences)
+			for (CoreLabel token : sentence.get(TokensAnnotation.class))
+				result.add(getLemma(token.value(), token.get(LemmaAnnotation.class)));
+		return result;
+	}
+
+	private static String getLemma(String word, String lemma) {
+		if (!word.endsWith("s") || lemma == null)
+			return word;
+		return lemma;
+	}
+
+	/**
+	 * Adds a lemma to the recent half of the cache. When that is full it
+	 * becomes the older half and the previous older half is dropped, so a
+	 * word used since then survives by being copied back on its next hit.
+	 */
+	private static void cacheLemma(String word, String lemma) {
+		ConcurrentHashMap<String, String> recent = recentLemmas;
+		if (recent.size() >= MAX_CACHED_LEMMAS / 2) {
+			synchronized (StanfordCoreNLPLemmatizer.class) {
+				if (recentLemmas == recent) {
+					olderLemmas = recent;
+					recentLemmas = new ConcurrentHashMap<String, String>();
+				}
+				recent = recentLemmas;
+			}
+		}
+		recent.put(word, lemma);
+	}
+
+	public static int getCacheSize() {
+		return recentLemmas.size() + olderLemmas.size();
+	}
 
 	@Override
 	public String getRevision() {
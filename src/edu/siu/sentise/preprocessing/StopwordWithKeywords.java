@@ -21,8 +21,7 @@ package edu.siu.sentise.preprocessing;
 public class StopwordWithKeywords extends MyStopWordsHandler {
 
 	public StopwordWithKeywords(String stopwordFile, String keywordFile) {
-		super(stopwordFile);
-		this.loadStopwordsFromFile(keywordFile);
+		super(new String[] { stopwordFile, keywordFile });
 	}
 
 }
@@ -22,7 +22,30 @@ import java.util.ArrayList;
 
 import edu.siu.sentise.model.SentimentData;
 
+/**
+ * One preprocessing stage. A stage only has to transform the text of a
+ * single comment; the methods working on SentimentData are built on that.
+ * Stages may be used by several threads at once.
+ */
 public interface TextPreprocessor {
-	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentimentData);
+
+	/**
+	 * Processes every comment in place, one after the other.
+	 */
+	public default ArrayList<SentimentData> apply(ArrayList<SentimentData> sentimentData) {
+		for (int i = 0; i < sentimentData.size(); i++)
+			processData(sentimentData.get(i));
+		return sentimentData;
+	}
+
+	public String process(String text);
+
+	/**
+	 * Processes one comment in place. Stages that record more about a
+	 * comment than its text override this.
+	 */
+	public default void processData(SentimentData data) {
+		data.setText(process(data.getText()));
+	}
 
 }
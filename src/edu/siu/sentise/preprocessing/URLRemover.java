@@ -21,37 +21,85 @@ package edu.siu.sentise.preprocessing;
 import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 import edu.siu.sentise.model.SentimentData;
 
+/**
+ * Strips text the parser has no use for: URLs, fenced and indented code
+ * blocks, and the header and frame lines of stack traces. Everything is
+ * removed in one scan with a single matcher; each removed piece is left as
+ * one space so the words around it stay apart.
+ */
 public class URLRemover implements TextPreprocessor {
 
-	private static Pattern urlPattern = Pattern
-			.compile("((https?|ftp|gopher|telnet|file):((//)|(\\\\))+[\\w\\d:#@%/;$()~_?\\+-=\\\\\\.&]*/)");
+	private static final String URL = "(?:https?|ftp|gopher|telnet|file):(?://|\\\\)+[\\w:#@%/;$()~?+=\\\\.&,'*!-]*[\\w/#=&~+-]";
+	// an unclosed fence runs to the end of the comment, as in markdown
+	private static final String FENCED_CODE = "(?s:(?<fence>`{3,}|~{3,}).*?(?:\\k<fence>|\\z))";
+	private static final String INDENTED_LINE = "(?: {4}|\\t)[^\\n]*";
+	// as in markdown, indentation is code only after a blank line; at the
+	// start of the comment it takes at least two indented lines
+	private static final String INDENTED_CODE = "(?:(?<=\\n[ \\t]{0,8}\\r?\\n)" + INDENTED_LINE + "|\\A" + INDENTED_LINE
+			+ "(?=\\n(?: {4}|\\t)))(?:\\n" + INDENTED_LINE + ")*";
+	private static final String TRACE_FRAME_START = "[ \\t]*at [\\w$.<>/]+\\(";
+	// a qualified exception name starts a header only when a message or a
+	// frame follows, so a prose line that merely starts with one is kept
+	private static final String TRACE_HEADER = "^[ \\t]*(?:Caused by: |Exception in thread \"[^\"\\n]*\" )?(?:[a-zA-Z_$][\\w$]*\\.)+[A-Z][\\w$]*(?:Exception|Error|Throwable)(?::[ \\t]*\\S[^\\n]*|[ \\t]*(?=\\r?\\n"
+			+ TRACE_FRAME_START + "))";
+	private static final String TRACE_FRAME = "^[ \\t]*(?:at [\\w$.<>/]+\\([^)\\n]*\\)|\\.\\.\\. \\d+ (?:more|common frames omitted))[ \\t]*$";
+
+	private static final Pattern stripPattern = Pattern.compile(
+			FENCED_CODE + "|" + TRACE_HEADER + "|" + TRACE_FRAME + "|" + INDENTED_CODE + "|" + URL,
+			Pattern.MULTILINE);
 
 	public ArrayList<SentimentData> apply(ArrayList<SentimentData> sentiData) {
 
+		long removed = 0;
 		for (int i = 0; i < sentiData.size(); i++) {
 
-			sentiData.get(i).setText(removeURL(sentiData.get(i).getText()));
+			processData(sentiData.get(i));
+			removed += sentiData.get(i).getStrippedChars();
 		}
+		if (removed > 0)
+			System.out.println("Stripped " + removed + " characters of URLs, code and stack traces from "
+					+ sentiData.size() + " comments");
 
 		return sentiData;
 	}
 
-	public static String removeURL(String text) {
+	@Override
+	public void processData(SentimentData data) {
+		int[] removed = new int[1];
+		data.setText(strip(data.getText(), removed));
+		data.setStrippedChars(removed[0]);
+	}
 
-		Matcher m = urlPattern.matcher(text);
-		while (m.find()) {
-			String urlStr = m.group();
+	public String process(String text) {
+		return strip(text, null);
+	}
 
-			try {
-				text = text.replaceAll(urlStr, "");
-			} catch (PatternSyntaxException e) {
+	public static String removeURL(String text) {
+		return strip(text, null);
+	}
 
-			}
+	/**
+	 * The text without URLs, code and stack traces; the number of characters
+	 * removed goes to removedChars[0] when given.
+	 */
+	public static String strip(String text, int[] removedChars) {
+		Matcher m = stripPattern.matcher(text);
+		int removed = 0;
+		StringBuffer result = null;
+		while (m.find()) {
+			if (result == null)
+				result = new StringBuffer(text.length());
+			removed += m.end() - m.start();
+			m.appendReplacement(result, " ");
 		}
-		return text;
+		if (removedChars != null)
+			removedChars[0] = removed;
+		if (result == null)
+			return text;
+		m.appendTail(result);
+		return result.toString();
 	}
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.server;
+
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import edu.siu.sentise.ReloadablePredictor;
+import edu.siu.sentise.SentiSEPredictor;
+import weka.core.Utils;
+
+/**
+ * Collects comments submitted concurrently by the request threads into
+ * batches on a single dispatcher thread. A batch is closed when it reaches
+ * maxBatchSize or when its first comment has waited maxWaitMillis,
+ * whichever comes first, and its comments are then scored in parallel by
+ * a fixed pool of worker threads sharing the predictor. Each comment is
+ * scored by the model that is current when its worker picks it up, so a
+ * model reload never fails or drops a pending comment.
+ */
+public class MicroBatcher {
+
+	private final ReloadablePredictor predictor;
+	private final int maxBatchSize;
+	private final long maxWaitNanos;
+	private final BlockingQueue<PendingScore> queue = new LinkedBlockingQueue<PendingScore>();
+	private final Thread dispatcher;
+	private final ExecutorService workers;
+	private volatile boolean running = true;
+
+	public MicroBatcher(ReloadablePredictor predictor, int maxBatchSize, long maxWaitMillis, int numWorkers) {
+		this.predictor = predictor;
+		this.maxBatchSize = maxBatchSize;
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+		this.workers = Executors.newFixedThreadPool(numWorkers);
+
+		this.dispatcher = new Thread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		}, "sentise-batcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	public CompletableFuture<Score> submit(String text) {
+		PendingScore pending = new PendingScore(text);
+		if (!running)
+			pending.future.completeExceptionally(new IllegalStateException("Scoring has been shut down"));
+		else
+			queue.add(pending);
+		return pending.future;
+	}
+
+	public void shutdown() {
+		running = false;
+		dispatcher.interrupt();
+		workers.shutdown();
+	}
+
+	private void dispatch() {
+		ArrayList<PendingScore> batch = new ArrayList<PendingScore>(maxBatchSize);
+		try {
+			while (running) {
+				batch.add(queue.take());
+				long deadline = System.nanoTime() + maxWaitNanos;
+				while (batch.size() < maxBatchSize) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						queue.drainTo(batch, maxBatchSize - batch.size());
+						break;
+					}
+					PendingScore next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if (next == null)
+						break;
+					batch.add(next);
+				}
+				scoreBatch(batch);
+				awaitBatch(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		batch.addAll(queue);
+		for (PendingScore pending : batch)
+			pending.future.completeExceptionally(new IllegalStateException("Scoring has been shut down"));
+	}
+
+	private void scoreBatch(ArrayList<PendingScore> batch) {
+		for (final PendingScore pending : batch) {
+			workers.execute(new Runnable() {
+				public void run() {
+					score(pending);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits until every comment of the batch is scored, so at most one
+	 * batch is in the worker pool at a time.
+	 */
+	private void awaitBatch(ArrayList<PendingScore> batch) throws InterruptedException {
+		for (PendingScore pending : batch) {
+			try {
+				pending.future.get();
+			} catch (ExecutionException e) {
+				// reported to the submitter through its future
+			}
+		}
+	}
+
+	private void score(PendingScore pending) {
+		try {
+			SentiSEPredictor model = predictor.get();
+			double[] distribution = model.score(pending.text);
+			int best = Utils.maxIndex(distribution);
+			pending.future.complete(new Score(model.getClassLabel(best), distribution[best]));
+		} catch (Exception e) {
+			pending.future.completeExceptionally(e);
+		}
+	}
+
+	public static class Score {
+		private final int label;
+		private final double confidence;
+
+		public Score(int label, double confidence) {
+			this.label = label;
+			this.confidence = confidence;
+		}
+
+		public int getLabel() {
+			return label;
+		}
+
+		public double getConfidence() {
+			return confidence;
+		}
+	}
+
+	private static class PendingScore {
+		final String text;
+		final CompletableFuture<Score> future = new CompletableFuture<Score>();
+
+		PendingScore(String text) {
+			this.text = text;
+		}
+	}
+
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.siu.sentise.PredictionCache;
+import edu.siu.sentise.ReloadablePredictor;
+import edu.siu.sentise.preprocessing.POSTagProcessor;
+import edu.siu.sentise.util.JsonUtil;
+
+/**
+ * Long running scoring service on top of the JDK HTTP server. It only loads
+ * a saved model (see the -model option of SentiSE) and never touches the
+ * training or cross validation code.
+ *
+ * POST /score with {"text": "..."} (or a plain text body) returns
+ * {"label": 1, "confidence": 0.93}. POST /score/batch with {"texts": [...]}
+ * (or a bare JSON array) returns {"results": [...]} in request order.
+ * POST /reload loads the model file again in the background and swaps it
+ * in once it is warmed up.
+ */
+public class ScoringServer {
+
+	private static final int MAX_BODY_BYTES = 4 * 1024 * 1024;
+	private static final long REQUEST_TIMEOUT_SECONDS = 60;
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final MicroBatcher batcher;
+	private final ReloadablePredictor predictor;
+
+	public ScoringServer(ReloadablePredictor predictor, int port, int threads, int maxBatchSize, long maxWaitMillis,
+			int workers) throws IOException {
+		this.predictor = predictor;
+		this.batcher = new MicroBatcher(predictor, maxBatchSize, maxWaitMillis, workers);
+		// request threads only parse and wait for the batcher, the scoring itself is on the worker threads
+		this.executor = Executors.newFixedThreadPool(threads);
+		this.server = HttpServer.create(new InetSocketAddress(port), 0);
+		this.server.setExecutor(executor);
+
+		server.createContext("/score", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleScore(exchange);
+			}
+		});
+		server.createContext("/score/batch", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleBatch(exchange);
+			}
+		});
+		server.createContext("/reload", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleReload(exchange);
+			}
+		});
+		server.createContext("/health", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				sendJson(exchange, 200, healthJson());
+			}
+		});
+	}
+
+	public void start() {
+		server.start();
+		System.err.println("SentiSE scoring server listening on port " + server.getAddress().getPort());
+	}
+
+	public void stop() {
+		server.stop(1);
+		batcher.shutdown();
+		predictor.shutdown();
+		executor.shutdown();
+	}
+
+	private void handleScore(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestURI().getPath().equals("/score")) {
+			sendError(exchange, 404, "Not found");
+			return;
+		}
+		String body = readBody(exchange);
+		if (body == null)
+			return;
+
+		String text = body;
+		if (isJson(exchange, body)) {
+			try {
+				text = JsonUtil.parseObject(body).get("text");
+			} catch (IllegalArgumentException e) {
+				sendError(exchange, 400, e.getMessage());
+				return;
+			}
+			if (text == null) {
+				sendError(exchange, 400, "Missing text field");
+				return;
+			}
+		}
+
+		try {
+			MicroBatcher.Score score = batcher.submit(text).get(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			sendJson(exchange, 200, toJson(score));
+		} catch (Exception e) {
+			sendFailure(exchange, e);
+		}
+	}
+
+	private void handleBatch(HttpExchange exchange) throws IOException {
+		String body = readBody(exchange);
+		if (body == null)
+			return;
+
+		List<String> texts;
+		try {
+			if (body.trim().startsWith("[")) {
+				texts = JsonUtil.parseStringArray(body);
+			} else {
+				HashMap<String, String> values = JsonUtil.parseObject(body);
+				if (values.get("texts") == null) {
+					sendError(exchange, 400, "Missing texts field");
+					return;
+				}
+				texts = JsonUtil.parseStringArray(values.get("texts"));
+			}
+		} catch (IllegalArgumentException e) {
+			sendError(exchange, 400, e.getMessage());
+			return;
+		}
+
+		ArrayList<CompletableFuture<MicroBatcher.Score>> futures = new ArrayList<CompletableFuture<MicroBatcher.Score>>(
+				texts.size());
+		for (String text : texts)
+			futures.add(batcher.submit(text));
+
+		try {
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(REQUEST_TIMEOUT_SECONDS);
+			StringBuilder response = new StringBuilder("{\"results\":[");
+			for (int i = 0; i < futures.size(); i++) {
+				if (i > 0)
+					response.append(',');
+				long remaining = Math.max(0, deadline - System.nanoTime());
+				response.append(toJson(futures.get(i).get(remaining, TimeUnit.NANOSECONDS)));
+			}
+			response.append("]}");
+			sendJson(exchange, 200, response.toString());
+		} catch (Exception e) {
+			sendFailure(exchange, e);
+		}
+	}
+
+	/**
+	 * Starts loading the model file again and answers right away; requests
+	 * keep being scored by the current model until the new one is ready.
+	 */
+	private void handleReload(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("POST")) {
+			sendError(exchange, 405, "Use POST");
+			return;
+		}
+		predictor.reloadAsync();
+		sendJson(exchange, 202, "{\"status\":\"reloading\",\"generation\":" + predictor.getGeneration() + "}");
+	}
+
+	private String healthJson() {
+		String status = "{\"status\":\"ok\",\"generation\":" + predictor.getGeneration();
+		POSTagProcessor posTagProcessor = predictor.get().getPipeline().getPOSTagProcessor();
+		if (posTagProcessor != null)
+			status += ",\"parseFallbacks\":" + posTagProcessor.getFallbackCount();
+		PredictionCache cache = predictor.getCache();
+		if (cache == null)
+			return status + "}";
+		return status + ",\"cache\":{\"entries\":" + cache.size() + ",\"hits\":" + cache.getHits() + ",\"misses\":"
+				+ cache.getMisses() + ",\"evictions\":" + cache.getEvictions() + "}}";
+	}
+
+	private static String toJson(MicroBatcher.Score score) {
+		return String.format(Locale.ROOT, "{\"label\":%d,\"confidence\":%.4f}", score.getLabel(),
+				score.getConfidence());
+	}
+
+	private static boolean isJson(HttpExchange exchange, String body) {
+		String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (contentType != null)
+			return contentType.toLowerCase().startsWith("application/json");
+		return body.trim().startsWith("{");
+	}
+
+	/**
+	 * Returns the request body, or null after answering with an error.
+	 */
+	private static String readBody(HttpExchange exchange) throws IOException {
+		if (!exchange.getRequestMethod().equals("POST")) {
+			sendError(exchange, 405, "Use POST");
+			return null;
+		}
+
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			bytes.write(buffer, 0, read);
+			if (bytes.size() > MAX_BODY_BYTES) {
+				sendError(exchange, 413, "Request body too large");
+				return null;
+			}
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	private static void sendFailure(HttpExchange exchange, Exception e) throws IOException {
+		if (e instanceof TimeoutException)
+			sendError(exchange, 503, "Timed out waiting for the classifier");
+		else if (e instanceof ExecutionException)
+			sendError(exchange, 500, String.valueOf(e.getCause().getMessage()));
+		else
+			sendError(exchange, 500, String.valueOf(e.getMessage()));
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		sendJson(exchange, status, "{\"error\":" + JsonUtil.quote(message) + "}");
+	}
+
+	private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(bytes);
+		out.close();
+	}
+
+	public static void main(String[] args) {
+		Options options = new Options();
+		options.addOption(Option.builder("model").hasArg(true).required().desc("Saved SentiSE model").build());
+		options.addOption(Option.builder("port").hasArg(true).desc("Port to listen on. Default: 8080").build());
+		options.addOption(Option.builder("threads").hasArg(true)
+				.desc("Request handler threads. Default: 64").build());
+		options.addOption(Option.builder("batch").hasArg(true)
+				.desc("Maximum comments per classifier batch. Default: 32").build());
+		options.addOption(Option.builder("wait").hasArg(true)
+				.desc("Maximum milliseconds a comment waits for its batch to fill. Default: 5").build());
+		options.addOption(Option.builder("workers").hasArg(true)
+				.desc("Scoring threads, each with its own CoreNLP pipeline. Default: number of cores").build());
+		options.addOption(Option.builder("cache").hasArg(true)
+				.desc("Predictions to cache for repeated comments. Default: 0 (no cache)").build());
+		options.addOption(Option.builder("watch").hasArg(true)
+				.desc("Seconds between checks of the model file for changes. Default: 0 (reload only on POST /reload)")
+				.build());
+
+		CommandLine commandLine;
+		try {
+			commandLine = new DefaultParser().parse(options, args);
+		} catch (ParseException e) {
+			System.err.println(e.getMessage());
+			new HelpFormatter().printHelp("sentise-server", options, true);
+			return;
+		}
+
+		int port = Integer.parseInt(commandLine.getOptionValue("port", "8080"));
+		int threads = Integer.parseInt(commandLine.getOptionValue("threads", "64"));
+		int maxBatchSize = Integer.parseInt(commandLine.getOptionValue("batch", "32"));
+		long maxWaitMillis = Long.parseLong(commandLine.getOptionValue("wait", "5"));
+		int workers = Integer.parseInt(
+				commandLine.getOptionValue("workers", Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+		int cacheSize = Integer.parseInt(commandLine.getOptionValue("cache", "0"));
+		long watchSeconds = Long.parseLong(commandLine.getOptionValue("watch", "0"));
+
+		ReloadablePredictor predictor = new ReloadablePredictor(commandLine.getOptionValue("model"),
+				cacheSize > 0 ? new PredictionCache(cacheSize) : null, workers);
+		if (predictor.get() == null)
+			return;
+		if (watchSeconds > 0)
+			predictor.watch(watchSeconds);
+
+		try {
+			final ScoringServer scoringServer = new ScoringServer(predictor, port, threads, maxBatchSize,
+					maxWaitMillis, workers);
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					scoringServer.stop();
+				}
+			}));
+			scoringServer.start();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.util;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Replaces every occurrence of any key of a dictionary in one left to right
+ * scan, with an Aho-Corasick automaton built once. Where matches overlap
+ * the leftmost one wins, and of those starting at the same position the
+ * longest; replaced text is not scanned again. Keys are matched literally
+ * and anywhere in the text, not only at word boundaries.
+ *
+ * Immutable once built, so it can be shared between threads.
+ */
+public class AhoCorasickReplacer {
+
+	private final char[][] labels; // sorted transition characters of each node
+	private final int[][] targets;
+	private final int[] fail;
+	private final int[] pattern; // pattern ending at the node, -1 if none
+	private final int[] outputLink; // nearest node on the fail chain that ends a pattern, -1 if none
+	private final int[] patternLengths;
+	private final String[] replacements;
+
+	public AhoCorasickReplacer(Map<String, String> dictionary) {
+		ArrayList<TreeMap<Character, Integer>> trie = new ArrayList<TreeMap<Character, Integer>>();
+		ArrayList<Integer> nodePatterns = new ArrayList<Integer>();
+		trie.add(new TreeMap<Character, Integer>());
+		nodePatterns.add(-1);
+
+		ArrayList<String> keys = new ArrayList<String>();
+		ArrayList<String> values = new ArrayList<String>();
+		for (Map.Entry<String, String> entry : dictionary.entrySet()) {
+			String key = entry.getKey();
+			if (key.isEmpty())
+				continue;
+			int node = 0;
+			for (int i = 0; i < key.length(); i++) {
+				Integer next = trie.get(node).get(key.charAt(i));
+				if (next == null) {
+					next = trie.size();
+					trie.get(node).put(key.charAt(i), next);
+					trie.add(new TreeMap<Character, Integer>());
+					nodePatterns.add(-1);
+				}
+				node = next;
+			}
+			nodePatterns.set(node, keys.size());
+			keys.add(key);
+			values.add(entry.getValue());
+		}
+
+		int numNodes = trie.size();
+		labels = new char[numNodes][];
+		targets = new int[numNodes][];
+		pattern = new int[numNodes];
+		for (int node = 0; node < numNodes; node++) {
+			TreeMap<Character, Integer> edges = trie.get(node);
+			labels[node] = new char[edges.size()];
+			targets[node] = new int[edges.size()];
+			int j = 0;
+			for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+				labels[node][j] = edge.getKey();
+				targets[node][j] = edge.getValue();
+				j++;
+			}
+			pattern[node] = nodePatterns.get(node);
+		}
+
+		patternLengths = new int[keys.size()];
+		for (int i = 0; i < patternLengths.length; i++)
+			patternLengths[i] = keys.get(i).length();
+		replacements = values.toArray(new String[values.size()]);
+
+		// fail and output links, breadth first so shallower nodes are done first
+		fail = new int[numNodes];
+		outputLink = new int[numNodes];
+		outputLink[0] = -1;
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		for (int child : targets[0]) {
+			fail[child] = 0;
+			outputLink[child] = -1;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int node = queue.removeFirst();
+			for (int j = 0; j < labels[node].length; j++) {
+				char c = labels[node][j];
+				int child = targets[node][j];
+				int state = fail[node];
+				while (state != 0 && next(state, c) < 0)
+					state = fail[state];
+				int target = next(state, c);
+				fail[child] = target >= 0 && target != child ? target : 0;
+				outputLink[child] = pattern[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+				queue.add(child);
+			}
+		}
+	}
+
+	private int next(int node, char c) {
+		char[] nodeLabels = labels[node];
+		int low = 0;
+		int high = nodeLabels.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (nodeLabels[middle] < c)
+				low = middle + 1;
+			else if (nodeLabels[middle] > c)
+				high = middle - 1;
+			else
+				return targets[node][middle];
+		}
+		return -1;
+	}
+
+	public String replace(String text) {
+		return replace(text, text);
+	}
+
+	/**
+	 * Finds the keys in matchText, a form of text of the same length such as
+	 * its lower case, and copies the characters outside the matches from
+	 * text.
+	 */
+	public String replace(String text, String matchText) {
+		if (matchText.length() != text.length())
+			throw new IllegalArgumentException("Match text and text differ in length");
+		int length = text.length();
+		int[] longestAt = null; // pattern of the longest match starting at each position, plus one
+
+		int state = 0;
+		for (int i = 0; i < length; i++) {
+			char c = matchText.charAt(i);
+			int target;
+			while ((target = next(state, c)) < 0 && state != 0)
+				state = fail[state];
+			state = target < 0 ? 0 : target;
+
+			int node = pattern[state] >= 0 ? state : outputLink[state];
+			for (; node >= 0; node = outputLink[node]) {
+				int p = pattern[node];
+				int start = i - patternLengths[p] + 1;
+				if (longestAt == null)
+					longestAt = new int[length];
+				int current = longestAt[start] - 1;
+				if (current < 0 || patternLengths[p] > patternLengths[current])
+					longestAt[start] = p + 1;
+			}
+		}
+
+		if (longestAt == null)
+			return text;
+
+		StringBuilder result = new StringBuilder(length + 16);
+		int i = 0;
+		while (i < length) {
+			int p = longestAt[i] - 1;
+			if (p >= 0) {
+				result.append(replacements[p]);
+				i += patternLengths[p];
+			} else {
+				result.append(text.charAt(i));
+				i++;
+			}
+		}
+		return result.toString();
+	}
+
+	public int size() {
+		return replacements.length;
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Just enough JSON to read flat records such as {"id": 12, "text": "..."}
+ * and to write quoted strings. Nested values are kept as raw JSON text.
+ */
+public class JsonUtil {
+
+	private final String json;
+	private int pos;
+
+	private JsonUtil(String json) {
+		this.json = json;
+		this.pos = 0;
+	}
+
+	public static HashMap<String, String> parseObject(String json) {
+		JsonUtil parser = new JsonUtil(json);
+		HashMap<String, String> values = parser.readObject();
+		parser.skipWhitespace();
+		if (parser.pos != json.length())
+			throw parser.error("Unexpected trailing characters");
+		return values;
+	}
+
+	public static ArrayList<String> parseStringArray(String json) {
+		JsonUtil parser = new JsonUtil(json);
+		ArrayList<String> values = parser.readStringArray();
+		parser.skipWhitespace();
+		if (parser.pos != json.length())
+			throw parser.error("Unexpected trailing characters");
+		return values;
+	}
+
+	public static String quote(String text) {
+		StringBuilder builder = new StringBuilder(text.length() + 2);
+		builder.append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch (c) {
+			case '"':
+				builder.append("\\\"");
+				break;
+			case '\\':
+				builder.append("\\\\");
+				break;
+			case '\n':
+				builder.append("\\n");
+				break;
+			case '\r':
+				builder.append("\\r");
+				break;
+			case '\t':
+				builder.append("\\t");
+				break;
+			default:
+				if (c < 0x20)
+					builder.append(String.format("\\u%04x", (int) c));
+				else
+					builder.append(c);
+			}
+		}
+		builder.append('"');
+		return builder.toString();
+	}
+
+	private HashMap<String, String> readObject() {
+		HashMap<String, String> values = new HashMap<String, String>();
+		skipWhitespace();
+		expect('{');
+		skipWhitespace();
+		if (peek() == '}') {
+			pos++;
+			return values;
+		}
+		while (true) {
+			skipWhitespace();
+			String key = readString();
+			skipWhitespace();
+			expect(':');
+			skipWhitespace();
+			values.put(key, readValue());
+			skipWhitespace();
+			char c = next();
+			if (c == '}')
+				return values;
+			if (c != ',')
+				throw error("Expected ',' or '}'");
+		}
+	}
+
+	private ArrayList<String> readStringArray() {
+		ArrayList<String> values = new ArrayList<String>();
+		skipWhitespace();
+		expect('[');
+		skipWhitespace();
+		if (peek() == ']') {
+			pos++;
+			return values;
+		}
+		while (true) {
+			skipWhitespace();
+			values.add(readString());
+			skipWhitespace();
+			char c = next();
+			if (c == ']')
+				return values;
+			if (c != ',')
+				throw error("Expected ',' or ']'");
+		}
+	}
+
+	private String readValue() {
+		char c = peek();
+		if (c == '"')
+			return readString();
+		if (c == '{' || c == '[') {
+			int start = pos;
+			skipNested();
+			return json.substring(start, pos);
+		}
+		int start = pos;
+		while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0)
+			pos++;
+		String literal = json.substring(start, pos);
+		if (literal.isEmpty())
+			throw error("Expected a value");
+		return literal.equals("null") ? null : literal;
+	}
+
+	private void skipNested() {
+		int depth = 0;
+		do {
+			char c = peek();
+			if (c == '"') {
+				readString();
+				continue;
+			}
+			if (c == '{' || c == '[')
+				depth++;
+			else if (c == '}' || c == ']')
+				depth--;
+			pos++;
+		} while (depth > 0);
+	}
+
+	private String readString() {
+		expect('"');
+		StringBuilder builder = new StringBuilder();
+		while (true) {
+			char c = next();
+			if (c == '"')
+				return builder.toString();
+			if (c != '\\') {
+				builder.append(c);
+				continue;
+			}
+			c = next();
+			switch (c) {
+			case 'b':
+				builder.append('\b');
+				break;
+			case 'f':
+				builder.append('\f');
+				break;
+			case 'n':
+				builder.append('\n');
+				break;
+			case 'r':
+				builder.append('\r');
+				break;
+			case 't':
+				builder.append('\t');
+				break;
+			case 'u':
+				if (pos + 4 > json.length())
+					throw error("Incomplete unicode escape");
+				builder.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+				pos += 4;
+				break;
+			default:
+				builder.append(c);
+			}
+		}
+	}
+
+	private void skipWhitespace() {
+		while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+			pos++;
+	}
+
+	private char peek() {
+		if (pos >= json.length())
+			throw error("Unexpected end of input");
+		return json.charAt(pos);
+	}
+
+	private char next() {
+		char c = peek();
+		pos++;
+		return c;
+	}
+
+	private void expect(char expected) {
+		if (next() != expected)
+			throw error("Expected '" + expected + "'");
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + pos);
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Joins known multi word phrases into single tokens, "big fan" becoming
+ * "big_fan". The phrases are compiled once into a trie over word ids, so a
+ * document costs one walk over its words, at most as deep as the longest
+ * phrase, however many phrases there are.
+ *
+ * A word is a run of letters, digits, underscores and apostrophes; phrase
+ * words must be separated by whitespace only. Where phrases overlap the
+ * leftmost wins, and of those starting at the same word the longest.
+ * Immutable once built, so it can be shared between threads.
+ */
+public class NGramMerger {
+
+	private final HashMap<String, Integer> wordIds = new HashMap<String, Integer>();
+	private final HashMap<Long, Integer> edges = new HashMap<Long, Integer>(); // (node, word id) to child node
+	private final ArrayList<Boolean> terminal = new ArrayList<Boolean>();
+	private int numPhrases;
+	private int maxPhraseWords;
+
+	public NGramMerger(Collection<String> phrases) {
+		terminal.add(false);
+		for (String phrase : phrases) {
+			String[] words = phrase.trim().split("\\s+");
+			if (words.length < 2)
+				continue; // nothing to join
+			int node = 0;
+			for (String word : words) {
+				Integer id = wordIds.get(word);
+				if (id == null) {
+					id = wordIds.size();
+					wordIds.put(word, id);
+				}
+				Long edge = edgeKey(node, id);
+				Integer child = edges.get(edge);
+				if (child == null) {
+					child = terminal.size();
+					terminal.add(false);
+					edges.put(edge, child);
+				}
+				node = child;
+			}
+			if (!terminal.get(node)) {
+				terminal.set(node, true);
+				numPhrases++;
+			}
+			maxPhraseWords = Math.max(maxPhraseWords, words.length);
+		}
+	}
+
+	private static Long edgeKey(int node, int wordId) {
+		return ((long) node << 32) | wordId;
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '\'';
+	}
+
+	public String merge(String text) {
+		if (numPhrases == 0)
+			return text;
+
+		// word ids and spans, -1 for words in no phrase
+		int length = text.length();
+		ArrayList<int[]> words = new ArrayList<int[]>();
+		int i = 0;
+		while (i < length) {
+			if (!isWordChar(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			int start = i;
+			while (i < length && isWordChar(text.charAt(i)))
+				i++;
+			Integer id = wordIds.get(text.substring(start, i));
+			words.add(new int[] { id == null ? -1 : id, start, i });
+		}
+
+		StringBuilder result = null;
+		int copied = 0;
+		int w = 0;
+		while (w < words.size()) {
+			int node = 0;
+			int matchEnd = -1; // index of the last word of the longest phrase starting at w
+			for (int j = w; j < words.size() && j - w < maxPhraseWords; j++) {
+				int[] word = words.get(j);
+				if (word[0] < 0 || (j > w && !isWhitespace(text, words.get(j - 1)[2], word[1])))
+					break;
+				Integer child = edges.get(edgeKey(node, word[0]));
+				if (child == null)
+					break;
+				node = child;
+				if (terminal.get(node))
+					matchEnd = j;
+			}
+			if (matchEnd < 0) {
+				w++;
+				continue;
+			}
+
+			if (result == null)
+				result = new StringBuilder(length);
+			result.append(text, copied, words.get(w)[1]);
+			for (int j = w; j <= matchEnd; j++) {
+				if (j > w)
+					result.append('_');
+				result.append(text, words.get(j)[1], words.get(j)[2]);
+			}
+			copied = words.get(matchEnd)[2];
+			w = matchEnd + 1;
+		}
+
+		if (result == null)
+			return text;
+		result.append(text, copied, length);
+		return result.toString();
+	}
+
+	private static boolean isWhitespace(String text, int from, int to) {
+		for (int i = from; i < to; i++)
+			if (!Character.isWhitespace(text.charAt(i)))
+				return false;
+		return true;
+	}
+
+	public int size() {
+		return numPhrases;
+	}
+
+}
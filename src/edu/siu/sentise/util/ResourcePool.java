@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.util;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Bounded pool of objects that must not be used by two threads at once,
+ * such as CoreNLP pipelines. Instances are created on demand up to
+ * maxSize; after that borrow() waits until one is released.
+ */
+public abstract class ResourcePool<T> {
+
+	private final int maxSize;
+	private final LinkedBlockingQueue<T> idle = new LinkedBlockingQueue<T>();
+	private int created = 0;
+
+	public ResourcePool(int maxSize) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("Pool size must be positive: " + maxSize);
+		this.maxSize = maxSize;
+	}
+
+	protected abstract T create();
+
+	public T borrow() {
+		T resource = idle.poll();
+		if (resource != null)
+			return resource;
+
+		boolean canCreate;
+		synchronized (this) {
+			canCreate = created < maxSize;
+			if (canCreate)
+				created++;
+		}
+
+		// created outside the lock, building a pipeline can take seconds
+		if (canCreate) {
+			try {
+				return create();
+			} catch (RuntimeException e) {
+				synchronized (this) {
+					created--;
+				}
+				throw e;
+			}
+		}
+
+		try {
+			return idle.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for a pooled resource", e);
+		}
+	}
+
+	public void release(T resource) {
+		idle.add(resource);
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized int getCreated() {
+		return created;
+	}
+
+}
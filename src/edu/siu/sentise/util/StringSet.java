@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable set of strings in one open addressing table with linear
+ * probing. A lookup allocates nothing and reads only final fields, so the
+ * set can be shared between threads.
+ */
+public class StringSet {
+
+	private final String[] table;
+	private final int[] hashes;
+	private final int mask;
+	private final List<String> elements;
+
+	public StringSet(Collection<String> strings) {
+		int capacity = 16;
+		while (capacity < strings.size() * 2)
+			capacity <<= 1; // at most half full, so probe sequences stay short
+		table = new String[capacity];
+		hashes = new int[capacity];
+		mask = capacity - 1;
+
+		ArrayList<String> added = new ArrayList<String>(strings.size());
+		for (String string : strings) {
+			int hash = hash(string);
+			int slot = hash & mask;
+			while (table[slot] != null && !(hashes[slot] == hash && table[slot].equals(string)))
+				slot = (slot + 1) & mask;
+			if (table[slot] == null) {
+				table[slot] = string;
+				hashes[slot] = hash;
+				added.add(string);
+			}
+		}
+		elements = Collections.unmodifiableList(added);
+	}
+
+	// spreads the high bits of String.hashCode, which String caches
+	private static int hash(String string) {
+		int h = string.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	public boolean contains(String string) {
+		if (string == null)
+			return false;
+		int hash = hash(string);
+		int slot = hash & mask;
+		String candidate;
+		while ((candidate = table[slot]) != null) {
+			if (hashes[slot] == hash && candidate.equals(string))
+				return true;
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size() {
+		return elements.size();
+	}
+
+	/**
+	 * The strings in the order they were first added.
+	 */
+	public List<String> toList() {
+		return elements;
+	}
+
+}
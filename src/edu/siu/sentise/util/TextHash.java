@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2018 Southern Illinois University Carbondale, SoftSearch Lab
+ *
+ * Author: Amiangshu Bosu
+ *
+ * Licensed under GNU LESSER GENERAL PUBLIC LICENSE Version 3, 29 June 2007
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.siu.sentise.util;
+
+/**
+ * 64 bit hash of a text, used as the key of the prediction and parse
+ * caches. Collisions are possible but rare enough to ignore at the sizes
+ * those caches reach.
+ */
+public class TextHash {
+
+	private TextHash() {
+	}
+
+	/**
+	 * 64 bit FNV-1a hash of the UTF-16 code units of text.
+	 */
+	public static long fnv64(String text) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			hash ^= c & 0xff;
+			hash *= 0x100000001b3L;
+			hash ^= c >>> 8;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+}